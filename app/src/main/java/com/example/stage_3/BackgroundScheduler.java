@@ -0,0 +1,249 @@
+package com.example.stage_3;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 全局共享的后台任务调度器，按优先级分为三条通道：用户可见、预取、批量维护。
+ * 每条通道有独立的并发上限和队列容量，相同 key 的任务会被合并，
+ * 播放器处于准备阶段等对延迟敏感的时候暂停派发预取和维护任务。
+ */
+public class BackgroundScheduler {
+    private static final String TAG = "BackgroundScheduler";
+
+    public enum Lane {
+        USER_VISIBLE(2, 64, Process.THREAD_PRIORITY_DEFAULT), // 用户正在等待的任务，例如扫描歌曲列表
+        PREFETCH(1, 128, Process.THREAD_PRIORITY_BACKGROUND), // 马上可能用到的数据，例如加载缓存
+        MAINTENANCE(1, 512, Process.THREAD_PRIORITY_LOWEST); // 批量维护，例如查重、响度分析
+
+        final int parallelism; // 同时运行的任务上限
+        final int capacity; // 排队任务上限
+        final int threadPriority;
+
+        Lane(int parallelism, int capacity, int threadPriority) {
+            this.parallelism = parallelism;
+            this.capacity = capacity;
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    // 时钟和线程优先级，单元测试中换成不依赖 Android 的实现
+    interface Platform {
+        long elapsedRealtime();
+
+        void setThreadPriority(int priority);
+    }
+
+    private static final Platform ANDROID = new Platform() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void setThreadPriority(int priority) {
+            Process.setThreadPriority(priority);
+        }
+    };
+
+    private static BackgroundScheduler instance;
+
+    private final Platform platform;
+    private final ExecutorService executor;
+    private final Map<Lane, ArrayDeque<Job>> queues = new HashMap<>();
+    private final Map<String, Job> jobsByKey = new HashMap<>(); // 排队中和运行中的任务，用于去重
+    private final int[] running = new int[Lane.values().length];
+    private final long[] started = new long[Lane.values().length];
+    private final long[] completed = new long[Lane.values().length];
+    private final long[] totalWaitMillis = new long[Lane.values().length];
+    private final long[] maxWaitMillis = new long[Lane.values().length];
+    private boolean backoff = false; // 播放器处于延迟敏感阶段
+
+    public static synchronized BackgroundScheduler getInstance() {
+        if (instance == null) {
+            instance = new BackgroundScheduler();
+        }
+        return instance;
+    }
+
+    private BackgroundScheduler() {
+        this(ANDROID);
+    }
+
+    BackgroundScheduler(Platform platform) {
+        this.platform = platform;
+        int threads = 0;
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new ArrayDeque<>());
+            threads += lane.parallelism;
+        }
+        // 派发时保证各通道不超过上限，因此线程总数等于各通道上限之和
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    public class Job {
+        private final Lane lane;
+        private final String key;
+        private final Runnable task;
+        private final long enqueueTime = platform.elapsedRealtime();
+        private Thread thread; // 运行中的线程，用于取消时中断
+        private boolean cancelled = false;
+
+        Job(Lane lane, String key, Runnable task) {
+            this.lane = lane;
+            this.key = key;
+            this.task = task;
+        }
+
+        // 排队中的任务直接移除，运行中的任务会被中断
+        public void cancel() {
+            synchronized (BackgroundScheduler.this) {
+                if (cancelled) return;
+                cancelled = true;
+                if (thread != null) {
+                    thread.interrupt();
+                } else if (queues.get(lane).remove(this)) {
+                    jobsByKey.remove(key);
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            synchronized (BackgroundScheduler.this) {
+                return cancelled;
+            }
+        }
+    }
+
+    // 提交任务，相同 key 的任务还没结束时返回已有的任务；队列满时返回 null
+    public synchronized Job submit(Lane lane, String key, Runnable task) {
+        Job existing = jobsByKey.get(key);
+        if (existing != null && !existing.cancelled) {
+            return existing;
+        }
+        ArrayDeque<Job> queue = queues.get(lane);
+        if (queue.size() >= lane.capacity) {
+            Log.w(TAG, lane + " 队列已满，丢弃任务: " + key);
+            return null;
+        }
+        Job job = new Job(lane, key, task);
+        queue.add(job);
+        jobsByKey.put(key, job);
+        dispatch();
+        return job;
+    }
+
+    public synchronized void cancel(String key) {
+        Job job = jobsByKey.get(key);
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    // 播放器进入或离开准备阶段时调用，期间只派发用户可见的任务
+    public synchronized void setBackoff(boolean backoff) {
+        this.backoff = backoff;
+        if (!backoff) {
+            notifyAll(); // 唤醒在 awaitNoBackoff 中等待的任务
+            dispatch();
+        }
+    }
+
+    public synchronized boolean isBackoff() {
+        return backoff;
+    }
+
+    // 已经在运行的任务在读写之间调用，播放器准备期间在这里等待
+    public synchronized void awaitNoBackoff() throws InterruptedException {
+        while (backoff) {
+            wait();
+        }
+    }
+
+    public synchronized int getQueueDepth(Lane lane) {
+        return queues.get(lane).size();
+    }
+
+    public synchronized int getRunningCount(Lane lane) {
+        return running[lane.ordinal()];
+    }
+
+    // 任务从提交到开始运行的平均等待时间，按已开始的任务计算，运行中的任务也算在内
+    public synchronized long getAverageWaitMillis(Lane lane) {
+        int i = lane.ordinal();
+        return started[i] == 0 ? 0 : totalWaitMillis[i] / started[i];
+    }
+
+    public synchronized long getMaxWaitMillis(Lane lane) {
+        return maxWaitMillis[lane.ordinal()];
+    }
+
+    public synchronized String dumpMetrics() {
+        StringBuilder sb = new StringBuilder();
+        for (Lane lane : Lane.values()) {
+            int i = lane.ordinal();
+            sb.append(lane).append(": 排队 ").append(queues.get(lane).size())
+                    .append(", 运行 ").append(running[i])
+                    .append(", 完成 ").append(completed[i])
+                    .append(", 平均等待 ").append(getAverageWaitMillis(lane)).append("ms")
+                    .append(", 最长等待 ").append(maxWaitMillis[i]).append("ms\n");
+        }
+        return sb.toString();
+    }
+
+    // 停止所有线程，只用于单元测试中创建的实例
+    void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    // 按优先级从高到低派发，直到各通道达到并发上限
+    private void dispatch() {
+        for (Lane lane : Lane.values()) {
+            if (backoff && lane != Lane.USER_VISIBLE) break;
+            ArrayDeque<Job> queue = queues.get(lane);
+            while (running[lane.ordinal()] < lane.parallelism && !queue.isEmpty()) {
+                Job job = queue.poll();
+                running[lane.ordinal()]++;
+                executor.execute(() -> run(job));
+            }
+        }
+    }
+
+    private void run(Job job) {
+        int i = job.lane.ordinal();
+        synchronized (this) {
+            long wait = platform.elapsedRealtime() - job.enqueueTime;
+            started[i]++;
+            totalWaitMillis[i] += wait;
+            maxWaitMillis[i] = Math.max(maxWaitMillis[i], wait);
+            job.thread = Thread.currentThread();
+        }
+
+        try {
+            if (!job.isCancelled()) {
+                platform.setThreadPriority(job.lane.threadPriority);
+                job.task.run();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "任务执行失败: " + job.key, e);
+        } finally {
+            synchronized (this) {
+                job.thread = null;
+                running[i]--;
+                completed[i]++;
+                if (jobsByKey.get(job.key) == job) {
+                    jobsByKey.remove(job.key);
+                }
+                Thread.interrupted(); // 清除取消留下的中断标记，线程会被复用
+                dispatch();
+            }
+        }
+    }
+}
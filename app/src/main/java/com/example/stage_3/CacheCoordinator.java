@@ -0,0 +1,134 @@
+package com.example.stage_3;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 全局缓存登记处。各个缓存登记自己的大小和重建代价，
+ * 收到 onTrimMemory 时按内存紧张程度释放相应比例的内存，重建代价低的先释放。
+ */
+public class CacheCoordinator {
+    private static final String TAG = "CacheCoordinator";
+    private static final long DUPLICATE_WINDOW_MS = 1000; // Activity 和 Service 会收到同一次回调
+
+    public interface TrimmableCache {
+        String getName();
+
+        long getSizeBytes(); // 当前占用内存的估计值
+
+        int getRebuildCost(); // 相对重建代价，越小越先被释放
+
+        int getMinTrimLevel(); // 低于这个级别时不释放，例如后台播放还要用到的缓存
+
+        long trim(long bytesToFree); // 释放至少指定字节数（能释放多少算多少），返回实际释放的字节数
+    }
+
+    private static CacheCoordinator instance;
+
+    private final List<TrimmableCache> caches = new CopyOnWriteArrayList<>();
+    private int lastLevel = -1;
+    private long lastTrimTime = 0;
+
+    public static synchronized CacheCoordinator getInstance() {
+        if (instance == null) {
+            instance = new CacheCoordinator();
+        }
+        return instance;
+    }
+
+    public void register(TrimmableCache cache) {
+        caches.add(cache);
+    }
+
+    public void unregister(TrimmableCache cache) {
+        caches.remove(cache);
+    }
+
+    public synchronized void onTrimMemory(int level) {
+        long now = SystemClock.elapsedRealtime();
+        if (level == lastLevel && now - lastTrimTime < DUPLICATE_WINDOW_MS) return;
+        lastLevel = level;
+        lastTrimTime = now;
+
+        float fraction = trimFraction(level);
+        if (fraction <= 0) return;
+
+        long total = getTrimmableSizeBytes(level);
+        long freed = trim((long) (total * fraction), level);
+        Log.d(TAG, "onTrimMemory(" + level + "): 释放 " + freed + "/" + total + " 字节\n" + dumpSizes());
+    }
+
+    // 按重建代价从低到高释放，直到释放够目标字节数
+    public long trim(long bytesToFree) {
+        return trim(bytesToFree, ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    // 只释放允许在该级别释放的缓存
+    public long trim(long bytesToFree, int level) {
+        List<TrimmableCache> sorted = new ArrayList<>();
+        for (TrimmableCache cache : caches) {
+            if (level >= cache.getMinTrimLevel()) sorted.add(cache);
+        }
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.getRebuildCost(), b.getRebuildCost()));
+        long freed = 0;
+        for (TrimmableCache cache : sorted) {
+            if (freed >= bytesToFree) break;
+            freed += cache.trim(bytesToFree - freed);
+        }
+        return freed;
+    }
+
+    public long getTotalSizeBytes() {
+        long total = 0;
+        for (TrimmableCache cache : caches) {
+            total += cache.getSizeBytes();
+        }
+        return total;
+    }
+
+    // 该级别下允许释放的缓存占用的内存，释放比例按这部分计算
+    long getTrimmableSizeBytes(int level) {
+        long total = 0;
+        for (TrimmableCache cache : caches) {
+            if (level >= cache.getMinTrimLevel()) total += cache.getSizeBytes();
+        }
+        return total;
+    }
+
+    // 每个缓存当前占用内存的明细
+    public Map<String, Long> getSizeBreakdown() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (TrimmableCache cache : caches) {
+            sizes.put(cache.getName(), cache.getSizeBytes());
+        }
+        return sizes;
+    }
+
+    public String dumpSizes() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : getSizeBreakdown().entrySet()) {
+            sb.append(e.getKey()).append(": ").append(e.getValue() / 1024).append("KB\n");
+        }
+        return sb.toString();
+    }
+
+    // 内存越紧张释放比例越高，进程即将被杀时全部释放
+    static float trimFraction(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) return 1f;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) return 0.5f;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) return 0.25f;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return 0.1f;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return 0.75f;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return 0.5f;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) return 0.25f;
+        return 0f;
+    }
+}
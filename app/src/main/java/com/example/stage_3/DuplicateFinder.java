@@ -0,0 +1,325 @@
+package com.example.stage_3;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 后台查找重复歌曲：先按文件大小和时长分组，再对候选文件做采样哈希确认，不读取整个文件。
+ * 全进程共享一个实例，哈希缓存和线程池不随 Activity 重建而丢失。
+ */
+public class DuplicateFinder implements CacheCoordinator.TrimmableCache {
+    private static final String TAG = "DuplicateFinder";
+    private static final int SAMPLE_COUNT = 5; // 采样块数量
+    private static final int SAMPLE_SIZE = 16 * 1024; // 每个采样块的字节数
+    private static final int MAX_THREADS = 4; // 哈希线程池上限
+    private static final int ENTRY_OVERHEAD = 160; // 每条哈希缓存除路径外的估计字节数
+    private static final int REBUILD_COST = 10; // 重建需要重新读取文件
+
+    private final ExecutorService hashExecutor; // 计算哈希的有界线程池
+    private final BackgroundScheduler scheduler = BackgroundScheduler.getInstance(); // 分组和汇总在维护通道运行
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, CacheEntry> hashCache = new ConcurrentHashMap<>(); // 按路径缓存的哈希结果
+    private volatile Result lastResult; // 最近一次完成的查重结果
+
+    private static DuplicateFinder instance;
+
+    interface ReadGate {
+        void await() throws InterruptedException; // 每次读取采样块之前调用，可以在这里等待或让路
+    }
+
+    public interface OnDuplicatesFoundListener {
+        void onDuplicatesFound(Result result);
+    }
+
+    public static synchronized DuplicateFinder getInstance() {
+        if (instance == null) {
+            instance = new DuplicateFinder();
+        }
+        return instance;
+    }
+
+    private DuplicateFinder() {
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        // 哈希线程不经过调度器的通道，但同样以后台优先级运行，并在读取前检查调度器是否要求让路
+        hashExecutor = Executors.newFixedThreadPool(threads, r -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, TAG));
+        CacheCoordinator.getInstance().register(this);
+    }
+
+    // 在后台查找重复歌曲，结果回调到主线程；新的查找会取消还没完成的旧查找
+    public void findAsync(List<LocalMusicBean> musicList, OnDuplicatesFoundListener listener) {
+        final List<LocalMusicBean> snapshot = new ArrayList<>(musicList);
+        scheduler.cancel(TAG);
+        scheduler.submit(BackgroundScheduler.Lane.MAINTENANCE, TAG, () -> {
+            Result result = find(snapshot);
+            if (Thread.currentThread().isInterrupted()) return; // 已被取消
+            lastResult = result;
+            mainHandler.post(() -> listener.onDuplicatesFound(result));
+        });
+    }
+
+    // 同步查找重复歌曲，不要在主线程调用
+    public Result find(List<LocalMusicBean> musicList) {
+        long start = System.currentTimeMillis();
+
+        // 第一步：按文件大小和时长分组，只有同组的文件才可能重复
+        Map<String, List<LocalMusicBean>> candidates = groupCandidates(musicList);
+
+        // 第二步：只对候选组内的文件提交采样哈希任务
+        Map<String, Future<String>> pending = new HashMap<>();
+        for (List<LocalMusicBean> group : candidates.values()) {
+            for (LocalMusicBean bean : group) {
+                final String path = bean.getPath();
+                pending.put(path, hashExecutor.submit(() -> cachedSampleHash(path)));
+            }
+        }
+
+        // 第三步：同组内哈希相同的视为重复，保留第一次出现的那首
+        Map<String, String> duplicateOf = new HashMap<>();
+        for (List<LocalMusicBean> group : candidates.values()) {
+            if (Thread.currentThread().isInterrupted()) break;
+            Map<String, String> firstByHash = new HashMap<>();
+            for (LocalMusicBean bean : group) {
+                String hash = await(pending.get(bean.getPath()));
+                if (Thread.currentThread().isInterrupted()) break;
+                if (hash == null) continue;
+                String original = firstByHash.get(hash);
+                if (original == null) {
+                    firstByHash.put(hash, bean.getPath());
+                } else {
+                    duplicateOf.put(bean.getPath(), original);
+                }
+            }
+        }
+
+        if (Thread.currentThread().isInterrupted()) {
+            // 已被取消：还没算完的哈希任务全部取消，避免反复查找时任务堆积
+            for (Future<String> future : pending.values()) {
+                future.cancel(true);
+            }
+            return new Result(duplicateOf);
+        }
+
+        Log.d(TAG, "查重完成: " + musicList.size() + " 首, 重复 " + duplicateOf.size()
+                + " 首, 耗时 " + (System.currentTimeMillis() - start) + "ms");
+        return new Result(duplicateOf);
+    }
+
+    // 按文件大小和时长（秒）分组，只保留不少于两首的组
+    static Map<String, List<LocalMusicBean>> groupCandidates(List<LocalMusicBean> musicList) {
+        Map<String, List<LocalMusicBean>> groups = new LinkedHashMap<>();
+        for (LocalMusicBean bean : musicList) {
+            long size = new File(bean.getPath()).length();
+            if (size <= 0) continue;
+            String key = size + "|" + bean.getDurationMillis() / 1000;
+            List<LocalMusicBean> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(bean);
+        }
+        Iterator<List<LocalMusicBean>> it = groups.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().size() < 2) it.remove();
+        }
+        return groups;
+    }
+
+    // 最近一次完成的查重结果，还没有查过时返回 null
+    public Result getLastResult() {
+        return lastResult;
+    }
+
+    @Override
+    public String getName() {
+        return "duplicate-hashes";
+    }
+
+    @Override
+    public long getSizeBytes() {
+        long size = 0;
+        for (String path : hashCache.keySet()) {
+            size += entrySize(path);
+        }
+        return size;
+    }
+
+    @Override
+    public int getRebuildCost() {
+        return REBUILD_COST;
+    }
+
+    // 哈希缓存只用于查重，任何级别都可以释放
+    @Override
+    public int getMinTrimLevel() {
+        return 0;
+    }
+
+    @Override
+    public long trim(long bytesToFree) {
+        long freed = 0;
+        Iterator<String> it = hashCache.keySet().iterator();
+        while (freed < bytesToFree && it.hasNext()) {
+            freed += entrySize(it.next());
+            it.remove();
+        }
+        return freed;
+    }
+
+    private static long entrySize(String path) {
+        return 2L * path.length() + ENTRY_OVERHEAD;
+    }
+
+    private String await(Future<String> future) {
+        if (future == null) return null;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "计算哈希失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 文件大小和修改时间都没变时直接复用缓存的哈希
+    private String cachedSampleHash(String path) throws IOException, InterruptedException {
+        File file = new File(path);
+        long size = file.length();
+        long modified = file.lastModified();
+        CacheEntry entry = hashCache.get(path);
+        if (entry != null && entry.size == size && entry.modified == modified) {
+            return entry.hash;
+        }
+        String hash = sampleHash(file, scheduler::awaitNoBackoff);
+        hashCache.put(path, new CacheEntry(size, modified, hash));
+        return hash;
+    }
+
+    static String sampleHash(File file) throws IOException {
+        try {
+            return sampleHash(file, null);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    // 用定位读取均匀采样若干块内容计算哈希，文件大小也参与计算
+    static String sampleHash(File file, ReadGate gate) throws IOException, InterruptedException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            ByteBuffer sizeBuffer = ByteBuffer.allocate(8);
+            sizeBuffer.putLong(size);
+            digest.update(sizeBuffer.array());
+
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+            long step = size <= SAMPLE_SIZE ? 0 : (size - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                if (gate != null) {
+                    gate.await(); // 播放器准备期间暂停读取
+                }
+                long position = i * step;
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position + buffer.position());
+                    if (read < 0) break;
+                }
+                buffer.flip();
+                digest.update(buffer);
+                if (step == 0) break; // 小文件一次就读完了
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static class CacheEntry {
+        final long size;
+        final long modified;
+        final String hash;
+
+        CacheEntry(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    public static class Result {
+        private final Map<String, String> duplicateOf; // 重复文件路径 -> 保留的文件路径
+
+        Result(Map<String, String> duplicateOf) {
+            this.duplicateOf = duplicateOf;
+        }
+
+        public boolean isDuplicate(String path) {
+            return duplicateOf.containsKey(path);
+        }
+
+        public String getOriginalPath(String path) {
+            String original = duplicateOf.get(path);
+            return original != null ? original : path;
+        }
+
+        // 被判定为重复、会从列表中折叠掉的文件路径
+        public Set<String> getDuplicatePaths() {
+            return Collections.unmodifiableSet(duplicateOf.keySet());
+        }
+
+        public int getDuplicateCount() {
+            return duplicateOf.size();
+        }
+
+        // 返回去掉重复歌曲后的列表，顺序不变
+        public List<LocalMusicBean> collapse(List<LocalMusicBean> musicList) {
+            List<LocalMusicBean> unique = new ArrayList<>(musicList.size());
+            for (LocalMusicBean bean : musicList) {
+                if (!isDuplicate(bean.getPath())) {
+                    unique.add(bean);
+                }
+            }
+            return unique;
+        }
+    }
+}
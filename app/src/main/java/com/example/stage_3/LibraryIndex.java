@@ -0,0 +1,130 @@
+package com.example.stage_3;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 本地歌曲的哈希索引，用于把播放列表中的条目解析成歌曲。
+ * 先按规范化后的完整路径查找，找不到再按文件名查找，同名文件用时长区分。
+ */
+public class LibraryIndex {
+    private static final long DURATION_TOLERANCE_MS = 2000; // 时长允许的误差
+
+    private final Map<String, LocalMusicBean> byPath = new HashMap<>();
+    private final Map<String, List<LocalMusicBean>> byName = new HashMap<>();
+
+    public LibraryIndex(List<LocalMusicBean> library) {
+        for (LocalMusicBean bean : library) {
+            if (bean.getPath() == null) continue;
+            add(normalizePath(bean.getPath()), bean);
+        }
+    }
+
+    // 曲库中被折叠的重复歌曲，按原来的路径也能解析到保留下来的那首
+    public void addDuplicates(DuplicateFinder.Result duplicates) {
+        for (String path : duplicates.getDuplicatePaths()) {
+            LocalMusicBean kept = byPath.get(normalizePath(duplicates.getOriginalPath(path)));
+            String key = normalizePath(path);
+            if (kept != null && !byPath.containsKey(key)) {
+                add(key, kept);
+            }
+        }
+    }
+
+    private void add(String key, LocalMusicBean bean) {
+        byPath.put(key, bean);
+        String name = fileName(key);
+        List<LocalMusicBean> sameName = byName.get(name);
+        if (sameName == null) {
+            sameName = new ArrayList<>(1);
+            byName.put(name, sameName);
+        }
+        sameName.add(bean);
+    }
+
+    // 解析播放列表中的一个条目，相对路径相对于 baseDir；找不到或有歧义时返回 null
+    public LocalMusicBean resolve(String location, File baseDir, long durationMillis) {
+        String path = location;
+        if (path.startsWith("file:")) {
+            try {
+                path = new URI(path).getPath();
+            } catch (URISyntaxException e) {
+                return null;
+            }
+            if (path == null) return null;
+        } else if (path.contains("://")) {
+            return null; // 网络地址不在本地曲库中
+        }
+
+        path = path.replace('\\', '/');
+        boolean absolute = path.startsWith("/") || (path.length() > 2 && path.charAt(1) == ':'); // 也包括 Windows 盘符
+        if (!absolute && baseDir != null) {
+            path = baseDir.getPath() + "/" + path;
+        }
+        String key = normalizePath(path);
+
+        LocalMusicBean bean = byPath.get(key);
+        if (bean != null) return bean;
+
+        // 路径对不上（例如从其他设备拷来的播放列表），按文件名 + 时长匹配
+        List<LocalMusicBean> candidates = byName.get(fileName(key));
+        if (candidates == null) return null;
+        if (durationMillis < 0) {
+            return candidates.size() == 1 ? candidates.get(0) : null;
+        }
+        LocalMusicBean best = null;
+        long bestDiff = DURATION_TOLERANCE_MS + 1;
+        for (LocalMusicBean candidate : candidates) {
+            long candidateDuration = durationMillis(candidate);
+            long diff = candidateDuration < 0 ? DURATION_TOLERANCE_MS : Math.abs(candidateDuration - durationMillis);
+            if (diff < bestDiff) {
+                best = candidate;
+                bestDiff = diff;
+            }
+        }
+        return best;
+    }
+
+    public int size() {
+        return byPath.size();
+    }
+
+    // 统一分隔符、去掉 . 和 ..、统一 /sdcard 别名，并忽略大小写
+    static String normalizePath(String path) {
+        path = path.replace('\\', '/');
+        if (path.startsWith("/sdcard/")) {
+            path = "/storage/emulated/0/" + path.substring("/sdcard/".length());
+        }
+        Deque<String> parts = new ArrayDeque<>();
+        for (String part : path.split("/")) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            if (part.equals("..")) {
+                parts.pollLast();
+            } else {
+                parts.addLast(part);
+            }
+        }
+        StringBuilder sb = new StringBuilder(path.length());
+        for (String part : parts) {
+            sb.append('/').append(part);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static String fileName(String normalizedPath) {
+        return normalizedPath.substring(normalizedPath.lastIndexOf('/') + 1);
+    }
+
+    // 歌曲时长（毫秒），未知时返回 -1
+    static long durationMillis(LocalMusicBean bean) {
+        return bean.getDurationMillis() > 0 ? bean.getDurationMillis() : -1;
+    }
+}
@@ -34,6 +34,13 @@ public class LocalMusicAdapter extends RecyclerView.Adapter<LocalMusicAdapter.Lo
     public LocalMusicViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(context).inflate(R.layout.item_local_music,parent,false);
         LocalMusicViewHolder holder = new LocalMusicViewHolder(view);
+        // 点击监听在创建时设置一次，滚动绑定时不再创建新对象
+        holder.itemView.setOnClickListener(v -> {
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && onItemClickListener != null) {
+                onItemClickListener.OnItemClick(v, position);
+            }
+        });
         return holder;
     }
 
@@ -44,14 +51,19 @@ public class LocalMusicAdapter extends RecyclerView.Adapter<LocalMusicAdapter.Lo
         holder.songTv.setText(musicBean.getSong());
         holder.singTv.setText(musicBean.getSinger());
         holder.albumTv.setText(musicBean.getAlbum());
-        holder.timeTv.setText(musicBean.getDuration());
+        TimeFormatter.setTime(holder.timeTv, holder.timeBuffer, musicBean.getDurationMillis()); // 绑定时才格式化时长
+    }
 
-        holder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                onItemClickListener.OnItemClick(view,position);
-            }
-        });
+    // 根据查重结果折叠重复歌曲，并重新编号
+    public void collapseDuplicates(DuplicateFinder.Result result) {
+        if (result.getDuplicateCount() == 0) return;
+        List<LocalMusicBean> unique = result.collapse(mDatas);
+        mDatas.clear();
+        mDatas.addAll(unique);
+        for (int i = 0; i < mDatas.size(); i++) {
+            mDatas.get(i).setId(String.valueOf(i + 1));
+        }
+        notifyDataSetChanged();
     }
 
     @Override
@@ -61,6 +73,7 @@ public class LocalMusicAdapter extends RecyclerView.Adapter<LocalMusicAdapter.Lo
 
     class LocalMusicViewHolder extends RecyclerView.ViewHolder {
         TextView idTv,songTv,singTv,albumTv,timeTv;
+        final char[] timeBuffer = new char[TimeFormatter.MAX_LENGTH]; // 每行复用的时长缓冲区
         public LocalMusicViewHolder(@NonNull View itemView) {
             super(itemView);
             idTv = itemView.findViewById(R.id.item_local_music_num);
@@ -6,18 +6,18 @@ public class LocalMusicBean {
     private String song;//歌曲名称
     private String singer;//歌手名称
     private String album;//专辑名称
-    private String duration;//歌曲时长
+    private long durationMillis;//歌曲时长（毫秒），显示时再格式化
     private String path;//歌曲路径
 
     public LocalMusicBean() {
     }
 
-    public LocalMusicBean(String id, String song, String singer, String album, String duration, String path) {
+    public LocalMusicBean(String id, String song, String singer, String album, long durationMillis, String path) {
         this.id = id;
         this.song = song;
         this.singer = singer;
         this.album = album;
-        this.duration = duration;
+        this.durationMillis = durationMillis;
         this.path = path;
     }
 
@@ -53,12 +53,12 @@ public class LocalMusicBean {
         this.album = album;
     }
 
-    public String getDuration() {
-        return duration;
+    public long getDurationMillis() {
+        return durationMillis;
     }
 
-    public void setDuration(String duration) {
-        this.duration = duration;
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
     }
 
     public String getPath() {
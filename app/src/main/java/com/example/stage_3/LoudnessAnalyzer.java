@@ -0,0 +1,156 @@
+package com.example.stage_3;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 按 EBU R128 / ITU-R BS.1770 计算整体响度（LUFS）和采样峰值，数据按块流式处理。
+ */
+public class LoudnessAnalyzer {
+    private static final int CHUNK_SAMPLES = 8192; // 每次读取的样本数
+    private static final double ABSOLUTE_GATE = -70.0; // 绝对门限 LUFS
+    private static final double RELATIVE_GATE = -10.0; // 相对门限 LU
+
+    public interface ChunkListener {
+        void onChunk() throws InterruptedException; // 每处理完一块回调一次，可用于让出 CPU
+    }
+
+    public static class Result {
+        public final float loudness; // 整体响度 LUFS，静音时为负无穷
+        public final float peak; // 采样峰值 dBFS
+
+        public Result(float loudness, float peak) {
+            this.loudness = loudness;
+            this.peak = peak;
+        }
+    }
+
+    public static Result analyze(PcmSource source, ChunkListener listener) throws IOException, InterruptedException {
+        float[] buffer = new float[CHUNK_SAMPLES];
+        double[] blocks = new double[256]; // 每个 400ms 块的均方能量
+        int blockCount = 0;
+        double[] subBlocks = new double[4]; // 最近 4 个 100ms 子块的能量和
+        int subBlockCount = 0;
+
+        int channels = 0;
+        int subBlockLength = 0;
+        double[][] state = null; // 每个声道两级滤波器的状态
+        double[] shelf = null, highPass = null;
+        double peak = 0;
+        double sum = 0; // 当前子块的平方和
+        int frames = 0; // 当前子块已处理的帧数
+        int channel = 0;
+
+        int read;
+        while ((read = source.read(buffer)) >= 0) {
+            if (state == null && read > 0) {
+                // 解码器在输出第一块后才确定采样率和声道数
+                channels = Math.max(1, source.getChannelCount());
+                int sampleRate = source.getSampleRate();
+                subBlockLength = sampleRate / 10;
+                state = new double[channels][4];
+                shelf = shelfCoefficients(sampleRate);
+                highPass = highPassCoefficients(sampleRate);
+            }
+
+            for (int i = 0; i < read; i++) {
+                double x = buffer[i];
+                peak = Math.max(peak, Math.abs(x));
+
+                // K 计权：高搁架滤波 + 高通滤波（直接 II 型转置）
+                double[] s = state[channel];
+                double y = shelf[0] * x + s[0];
+                s[0] = shelf[1] * x - shelf[3] * y + s[1];
+                s[1] = shelf[2] * x - shelf[4] * y;
+                double z = highPass[0] * y + s[2];
+                s[2] = highPass[1] * y - highPass[3] * z + s[3];
+                s[3] = highPass[2] * y - highPass[4] * z;
+                sum += z * z;
+
+                if (++channel < channels) continue;
+                channel = 0;
+                if (++frames < subBlockLength) continue;
+
+                // 子块结束，400ms 块以 100ms 为步长（75% 重叠）
+                subBlocks[subBlockCount % 4] = sum;
+                subBlockCount++;
+                sum = 0;
+                frames = 0;
+                if (subBlockCount >= 4) {
+                    if (blockCount == blocks.length) blocks = Arrays.copyOf(blocks, blockCount * 2);
+                    blocks[blockCount++] = (subBlocks[0] + subBlocks[1] + subBlocks[2] + subBlocks[3]) / (4.0 * subBlockLength);
+                }
+            }
+
+            if (listener != null) listener.onChunk();
+        }
+
+        return new Result((float) gatedLoudness(blocks, blockCount), (float) toDb(peak));
+    }
+
+    // 根据响度和峰值计算播放音量，MediaPlayer 只能衰减，因此结果不超过 1
+    public static float volumeFor(float loudness, float peak, float targetLoudness) {
+        if (Float.isInfinite(loudness) || Float.isNaN(loudness)) return 1f;
+        double gain = Math.min(targetLoudness - loudness, -peak); // 不让峰值超过 0dBFS
+        return (float) Math.min(1.0, Math.pow(10, gain / 20));
+    }
+
+    private static double gatedLoudness(double[] blocks, int count) {
+        double absoluteThreshold = toEnergy(ABSOLUTE_GATE);
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (blocks[i] > absoluteThreshold) {
+                sum += blocks[i];
+                n++;
+            }
+        }
+        if (n == 0) return Double.NEGATIVE_INFINITY;
+
+        double relativeThreshold = sum / n * Math.pow(10, RELATIVE_GATE / 10);
+        sum = 0;
+        n = 0;
+        for (int i = 0; i < count; i++) {
+            if (blocks[i] > absoluteThreshold && blocks[i] > relativeThreshold) {
+                sum += blocks[i];
+                n++;
+            }
+        }
+        return n == 0 ? Double.NEGATIVE_INFINITY : -0.691 + 10 * Math.log10(sum / n);
+    }
+
+    private static double toEnergy(double loudness) {
+        return Math.pow(10, (loudness + 0.691) / 10);
+    }
+
+    private static double toDb(double amplitude) {
+        return amplitude > 0 ? 20 * Math.log10(amplitude) : Double.NEGATIVE_INFINITY;
+    }
+
+    // 第一级：模拟头部声学效应的高搁架滤波器，返回 {b0, b1, b2, a1, a2}
+    private static double[] shelfCoefficients(int sampleRate) {
+        double f0 = 1681.974450955533;
+        double g = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10, g / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        return new double[]{
+                (vh + vb * k / q + k * k) / a0,
+                2 * (k * k - vh) / a0,
+                (vh - vb * k / q + k * k) / a0,
+                2 * (k * k - 1) / a0,
+                (1 - k / q + k * k) / a0
+        };
+    }
+
+    // 第二级：RLB 高通滤波器
+    private static double[] highPassCoefficients(int sampleRate) {
+        double f0 = 38.13547087602444;
+        double q = 0.5003270373238773;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double a0 = 1 + k / q + k * k;
+        return new double[]{1, -2, 1, 2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0};
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.stage_3;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每首歌的响度分析结果缓存，以紧凑的二进制格式保存在应用私有目录。
+ * 文件大小或修改时间变化后缓存失效。内存紧张时只释放已经落盘的记录，
+ * 之后需要时再按路径从文件读回；保存时会把文件中不在内存里的记录一起写回。
+ */
+public class LoudnessCache implements CacheCoordinator.TrimmableCache {
+    private static final String TAG = "LoudnessCache";
+    private static final int VERSION = 2; // 记录一直写到文件末尾，不再写总数
+    private static final int ENTRY_OVERHEAD = 96; // 每条记录除路径外的估计字节数
+    private static final int REBUILD_COST = 1; // 重建只需重新读取缓存文件
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> unsaved = ConcurrentHashMap.newKeySet(); // 还没写入文件的记录
+    private final Object loadLock = new Object();
+    private final Object saveLock = new Object();
+    private volatile boolean loaded = false; // 内存中是否包含文件里的全部记录
+    private int trimCount = 0; // 每次释放内存加一，用于判断加载期间是否被释放过
+
+    public static class Entry {
+        final long size;
+        final long modified;
+        public final float loudness;
+        public final float peak;
+
+        Entry(long size, long modified, float loudness, float peak) {
+            this.size = size;
+            this.modified = modified;
+            this.loudness = loudness;
+            this.peak = peak;
+        }
+    }
+
+    private interface RecordHandler {
+        boolean onRecord(String path, Entry entry); // 返回 false 时停止读取
+    }
+
+    public LoudnessCache(File file) {
+        this.file = file;
+    }
+
+    // 返回内存中仍然有效的缓存结果，没有则返回 null
+    public Entry get(String path) {
+        Entry entry = entries.get(path);
+        if (entry == null) return null;
+        File audio = new File(path);
+        if (entry.size != audio.length() || entry.modified != audio.lastModified()) {
+            return null;
+        }
+        return entry;
+    }
+
+    // 内存中没有时从文件读回，会读文件，不要在主线程调用
+    public Entry getOrLoad(String path) {
+        Entry entry = get(path);
+        if (entry != null || loaded) return entry;
+        loadEntries(Collections.singleton(path));
+        return get(path);
+    }
+
+    // 和 trim、save 的快照使用同一把锁，保证新记录在落盘前不会被释放
+    public void put(String path, LoudnessAnalyzer.Result result) {
+        File audio = new File(path);
+        Entry entry = new Entry(audio.length(), audio.lastModified(), result.loudness, result.peak);
+        synchronized (this) {
+            unsaved.add(path);
+            entries.put(path, entry);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // 读取整个缓存文件，内存中已有的记录优先
+    public void load() {
+        synchronized (loadLock) {
+            if (loaded) return;
+            int trimsBefore;
+            synchronized (this) {
+                trimsBefore = trimCount;
+            }
+            readFile((path, entry) -> {
+                entries.putIfAbsent(path, entry);
+                return true;
+            });
+            synchronized (this) {
+                loaded = trimCount == trimsBefore; // 加载期间又被释放过就不能算完整
+            }
+        }
+    }
+
+    // 只从文件读回指定路径的记录，用于释放内存后按需补读
+    public void loadEntries(Collection<String> paths) {
+        if (loaded || paths.isEmpty()) return;
+        final Set<String> wanted = new HashSet<>(paths);
+        wanted.removeAll(entries.keySet());
+        if (wanted.isEmpty()) return;
+        readFile((path, entry) -> {
+            if (wanted.remove(path)) {
+                entries.putIfAbsent(path, entry);
+            }
+            return !wanted.isEmpty();
+        });
+    }
+
+    private void readFile(RecordHandler handler) {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) return;
+            while (true) {
+                String path;
+                try {
+                    path = in.readUTF();
+                } catch (EOFException e) {
+                    return; // 正常读到文件末尾
+                }
+                Entry entry = new Entry(in.readLong(), in.readLong(), in.readFloat(), in.readFloat());
+                if (!handler.onRecord(path, entry)) return;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "读取响度缓存失败: " + e.getMessage());
+        }
+    }
+
+    // 先写临时文件再重命名，避免写到一半被杀导致缓存损坏；
+    // 内存里只有部分记录时，把旧文件中其余的记录一起写过去，不会丢失
+    public void save() {
+        synchronized (saveLock) {
+            final Map<String, Entry> snapshot;
+            final Set<String> saving;
+            final boolean merge;
+            synchronized (this) {
+                if (unsaved.isEmpty()) return;
+                saving = new HashSet<>(unsaved);
+                snapshot = new HashMap<>(entries);
+                merge = !loaded;
+            }
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    writeRecord(out, e.getKey(), e.getValue());
+                }
+                if (merge) {
+                    final IOException[] error = new IOException[1];
+                    readFile((path, entry) -> {
+                        if (snapshot.containsKey(path)) return true;
+                        try {
+                            writeRecord(out, path, entry);
+                            return true;
+                        } catch (IOException e) {
+                            error[0] = e;
+                            return false;
+                        }
+                    });
+                    if (error[0] != null) throw error[0];
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "保存响度缓存失败: " + e.getMessage());
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                Log.e(TAG, "保存响度缓存失败: 无法重命名临时文件");
+                return;
+            }
+            synchronized (this) {
+                // 保存期间又更新过的记录还要再保存一次
+                for (String path : saving) {
+                    if (entries.get(path) == snapshot.get(path)) {
+                        unsaved.remove(path);
+                    }
+                }
+            }
+        }
+    }
+
+    // 在后台保存，可以在主线程调用
+    public void saveAsync() {
+        if (unsaved.isEmpty()) return;
+        BackgroundScheduler.getInstance().submit(BackgroundScheduler.Lane.PREFETCH, TAG + ":save", this::save);
+    }
+
+    private static void writeRecord(DataOutputStream out, String path, Entry entry) throws IOException {
+        out.writeUTF(path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.modified);
+        out.writeFloat(entry.loudness);
+        out.writeFloat(entry.peak);
+    }
+
+    private static long entrySize(String path) {
+        return 2L * path.length() + ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public String getName() {
+        return "loudness";
+    }
+
+    @Override
+    public long getSizeBytes() {
+        long size = 0;
+        for (String path : entries.keySet()) {
+            size += entrySize(path);
+        }
+        return size;
+    }
+
+    @Override
+    public int getRebuildCost() {
+        return REBUILD_COST;
+    }
+
+    // 后台播放时每首歌都要用到响度数据，界面隐藏时不释放
+    @Override
+    public int getMinTrimLevel() {
+        return ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+    }
+
+    // 只释放已经落盘的记录，释放量不超过需要的字节数；不在这里写文件，主线程也可以调用
+    @Override
+    public synchronized long trim(long bytesToFree) {
+        long freed = 0;
+        Iterator<String> it = entries.keySet().iterator();
+        while (freed < bytesToFree && it.hasNext()) {
+            String path = it.next();
+            if (unsaved.contains(path)) continue;
+            freed += entrySize(path);
+            it.remove();
+        }
+        if (freed > 0) {
+            loaded = false;
+            trimCount++;
+        }
+        saveAsync(); // 还没落盘的记录保存后，下次就可以释放
+        return freed;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.stage_3;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 后台响度分析：任务提交到调度器的维护通道，播放时每处理一块就让出一段时间。
+ */
+public class LoudnessScanner {
+    private static final String TAG = "LoudnessScanner";
+    private static final String KEY_PREFIX = "loudness:";
+    private static final long THROTTLE_MS = 20; // 播放时每块之后暂停的时间
+    private static final int SAVE_INTERVAL = 10; // 每分析多少首保存一次缓存
+    private static final int MAX_IN_FLIGHT = 16; // 同时提交到调度器的歌曲上限
+    private static final int LOAD_BATCH = 64; // 缓存被释放过时，每次从文件补读多少首的记录
+
+    public interface PlaybackMonitor {
+        boolean isPlaying(); // 正在播放或准备播放时返回 true
+    }
+
+    private final LoudnessCache cache;
+    private final PlaybackMonitor monitor;
+    private final BackgroundScheduler scheduler = BackgroundScheduler.getInstance();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet(); // 已提交还没完成的路径
+    private List<LocalMusicBean> pending = Collections.emptyList(); // 等待检查的歌曲列表
+    private int nextIndex = 0; // pending 中下一首要检查的位置
+    private int loadedUntil = 0; // pending 中这个位置之前的记录已经从缓存文件补读过
+    private int fillCount = 0;
+    private volatile int analyzedCount = 0;
+    private volatile long busyMillis = 0;
+
+    public LoudnessScanner(LoudnessCache cache, PlaybackMonitor monitor) {
+        this.cache = cache;
+        this.monitor = monitor;
+        scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "loudness-cache", cache::load); // 先在后台加载缓存
+    }
+
+    // 检查歌曲列表，只有还没有分析结果的歌曲才会提交，每次最多提交 MAX_IN_FLIGHT 首，
+    // 每分析完一首再从上次的位置继续补充，曲库再大也能全部分析到。
+    // 列表没有变化（例如重新绑定服务）时什么都不做；只是删掉了部分歌曲（例如折叠重复歌曲）时从原来的进度继续
+    public void enqueue(List<LocalMusicBean> musicList) {
+        int id;
+        synchronized (this) {
+            int[] resume = resumePositions(musicList);
+            if (resume != null && musicList.size() == pending.size()) return;
+            pending = new ArrayList<>(musicList);
+            nextIndex = resume != null ? resume[0] : 0;
+            loadedUntil = resume != null ? resume[1] : 0;
+            id = ++fillCount;
+        }
+        // 需要读取缓存文件和歌曲文件信息，放到后台做
+        scheduler.submit(BackgroundScheduler.Lane.MAINTENANCE, KEY_PREFIX + "fill:" + id, this::fill);
+    }
+
+    // musicList 是 pending 按原顺序删掉部分歌曲的结果时，返回 nextIndex 和 loadedUntil 在新列表中对应的位置，
+    // 否则返回 null。只比较路径，不访问文件，重新查询曲库得到的新对象也能识别
+    private int[] resumePositions(List<LocalMusicBean> musicList) {
+        int next = 0;
+        int loaded = 0;
+        int j = 0;
+        for (LocalMusicBean bean : musicList) {
+            while (j < pending.size() && !pending.get(j).getPath().equals(bean.getPath())) j++;
+            if (j == pending.size()) return null;
+            if (j < nextIndex) next++;
+            if (j < loadedUntil) loaded++;
+            j++;
+        }
+        return new int[]{next, loaded};
+    }
+
+    private void fill() {
+        while (true) {
+            List<String> batch = null;
+            synchronized (this) {
+                while (queued.size() < MAX_IN_FLIGHT && nextIndex < pending.size()) {
+                    if (nextIndex >= loadedUntil) {
+                        // 缓存没加载或被释放过时，按批从文件补读记录，避免重新分析已经有结果的歌曲
+                        loadedUntil = Math.min(pending.size(), nextIndex + LOAD_BATCH);
+                        batch = new ArrayList<>(loadedUntil - nextIndex);
+                        for (int i = nextIndex; i < loadedUntil; i++) {
+                            batch.add(pending.get(i).getPath());
+                        }
+                        break;
+                    }
+                    final String path = pending.get(nextIndex++).getPath();
+                    if (cache.get(path) != null || !queued.add(path)) continue;
+                    if (scheduler.submit(BackgroundScheduler.Lane.MAINTENANCE, KEY_PREFIX + path, () -> analyze(path)) == null) {
+                        queued.remove(path);
+                        nextIndex--; // 队列满了，下次从这首继续
+                        break;
+                    }
+                }
+            }
+            if (batch == null) return;
+            cache.loadEntries(batch); // 读文件时不持有锁
+        }
+    }
+
+    // 分析吞吐量，单位：首/分钟
+    public float getTracksPerMinute() {
+        long busy = busyMillis;
+        return busy == 0 ? 0 : analyzedCount * 60000f / busy;
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            pending = Collections.emptyList();
+            nextIndex = 0;
+        }
+        for (String path : queued) {
+            scheduler.cancel(KEY_PREFIX + path);
+        }
+        cache.saveAsync(); // 在主线程调用，写文件放到后台
+    }
+
+    private void analyze(String path) {
+        try {
+            if (cache.getOrLoad(path) != null) return;
+
+            long start = SystemClock.elapsedRealtime();
+            PcmSource source = path.toLowerCase(Locale.ROOT).endsWith(".wav")
+                    ? new WavPcmSource(new FileInputStream(path))
+                    : new MediaCodecPcmSource(path);
+            LoudnessAnalyzer.Result result;
+            try {
+                result = LoudnessAnalyzer.analyze(source, this::throttle);
+            } finally {
+                source.close();
+            }
+            cache.put(path, result);
+
+            busyMillis += SystemClock.elapsedRealtime() - start;
+            analyzedCount++;
+            if (analyzedCount % SAVE_INTERVAL == 0) {
+                cache.save();
+            }
+            Log.d(TAG, path + ": " + result.loudness + " LUFS, 峰值 " + result.peak
+                    + " dBFS, 吞吐量 " + getTracksPerMinute() + " 首/分钟");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.e(TAG, "响度分析失败: " + path + ", " + e.getMessage());
+        } finally {
+            queued.remove(path);
+            if (!Thread.currentThread().isInterrupted()) {
+                fill(); // 从上次的位置继续补充
+            }
+            if (queued.isEmpty()) {
+                cache.save(); // 队列空了就把结果落盘
+            }
+        }
+    }
+
+    // 播放器准备期间等到准备完成；播放时每块暂停一段时间给播放让路，否则只让出时间片
+    private void throttle() throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        scheduler.awaitNoBackoff();
+        if (monitor.isPlaying()) {
+            Thread.sleep(THROTTLE_MS);
+        } else {
+            Thread.yield();
+        }
+    }
+}
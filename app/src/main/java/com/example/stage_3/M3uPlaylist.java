@@ -0,0 +1,202 @@
+package com.example.stage_3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * M3U / M3U8 播放列表的流式读写，逐行处理，不会把整个播放列表读进内存。
+ */
+public class M3uPlaylist {
+    private static final int MAX_UNRESOLVED_SAMPLES = 100; // 最多记录多少条无法解析的条目
+    private static final int CHARSET_PROBE_SIZE = 64 * 1024; // 检测 .m3u 编码时最多读取的字节数
+    private static final Charset LEGACY_CHARSET = Charset.forName("GBK"); // 不是 UTF-8 的 .m3u 按 GBK 读取
+
+    public interface EntryHandler {
+        // durationMillis 为 -1 表示播放列表没有给出时长
+        void onEntry(int lineNumber, String location, long durationMillis, String title);
+    }
+
+    public static class ImportResult {
+        private final List<LocalMusicBean> resolved = new ArrayList<>();
+        private final List<String> unresolvedSamples = new ArrayList<>(); // "行号: 条目"
+        private int unresolvedCount = 0;
+
+        public List<LocalMusicBean> getResolved() {
+            return resolved;
+        }
+
+        public int getUnresolvedCount() {
+            return unresolvedCount;
+        }
+
+        // 只保留前 MAX_UNRESOLVED_SAMPLES 条，避免超大播放列表占用过多内存
+        public List<String> getUnresolvedSamples() {
+            return unresolvedSamples;
+        }
+    }
+
+    // 逐行读取播放列表，每遇到一个条目回调一次，返回条目数
+    public static int read(Reader reader, EntryHandler handler) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        int count = 0;
+        long duration = -1;
+        String title = null;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1); // 去掉 UTF-8 BOM
+            }
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            if (line.startsWith("#EXTINF:")) {
+                // #EXTINF:时长秒数 [属性],标题
+                int comma = line.indexOf(',');
+                String info = comma >= 0 ? line.substring(8, comma) : line.substring(8);
+                int space = info.indexOf(' ');
+                duration = parseSeconds(space >= 0 ? info.substring(0, space) : info);
+                title = comma >= 0 ? line.substring(comma + 1).trim() : null;
+                continue;
+            }
+            if (line.startsWith("#")) continue; // 其他注释和扩展标签
+
+            handler.onEntry(lineNumber, line, duration, title);
+            count++;
+            duration = -1;
+            title = null;
+        }
+        return count;
+    }
+
+    // 导入播放列表，相对路径相对于播放列表所在目录解析
+    public static ImportResult importFrom(File playlist, LibraryIndex index) throws IOException {
+        try (InputStream in = new FileInputStream(playlist)) {
+            return importFrom(in, playlist.getName(), playlist.getAbsoluteFile().getParentFile(), index);
+        }
+    }
+
+    // 从任意输入流导入，例如其他应用分享的 content:// 地址；baseDir 为 null 时相对路径只按文件名匹配。
+    // .m3u8 固定是 UTF-8；.m3u 没有规定编码，常见的是 UTF-8 或系统本地编码，读取前先检测。不会关闭输入流
+    public static ImportResult importFrom(InputStream input, String name, final File baseDir, LibraryIndex index) throws IOException {
+        final ImportResult result = new ImportResult();
+        InputStream in = new BufferedInputStream(input);
+        Reader reader = new InputStreamReader(in, charsetFor(name, in));
+        read(reader, (lineNumber, location, durationMillis, title) -> {
+            LocalMusicBean bean = index.resolve(location, baseDir, durationMillis);
+            if (bean != null) {
+                result.resolved.add(bean);
+            } else {
+                result.unresolvedCount++;
+                if (result.unresolvedSamples.size() < MAX_UNRESOLVED_SAMPLES) {
+                    result.unresolvedSamples.add(lineNumber + ": " + location);
+                }
+            }
+        });
+        return result;
+    }
+
+    static Charset charsetFor(String fileName, InputStream in) throws IOException {
+        if (fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".m3u8")) {
+            return StandardCharsets.UTF_8;
+        }
+        return isUtf8(in) ? StandardCharsets.UTF_8 : LEGACY_CHARSET;
+    }
+
+    // 只检查开头的一段内容是否是合法的 UTF-8，读完后回到开头，不影响后面的流式读取
+    static boolean isUtf8(InputStream in) throws IOException {
+        in.mark(CHARSET_PROBE_SIZE);
+        try {
+            byte[] probe = new byte[CHARSET_PROBE_SIZE];
+            int length = 0;
+            int read;
+            while (length < probe.length && (read = in.read(probe, length, probe.length - length)) > 0) {
+                length += read;
+            }
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            CharBuffer out = CharBuffer.allocate(1024);
+            ByteBuffer bytes = ByteBuffer.wrap(probe, 0, length);
+            boolean endOfInput = length < probe.length; // 没读满说明整个文件都在里面
+            while (true) {
+                CoderResult coderResult = decoder.decode(bytes, out, endOfInput);
+                if (coderResult.isError()) return false;
+                if (coderResult.isOverflow()) {
+                    out.clear();
+                    continue;
+                }
+                return true; // 截断在多字节字符中间的结尾不算错误
+            }
+        } finally {
+            in.reset();
+        }
+    }
+
+    // 逐条写出播放列表，使用扩展 M3U 格式
+    public static void write(Writer writer, List<LocalMusicBean> queue) throws IOException {
+        BufferedWriter out = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+        out.write("#EXTM3U\n");
+        for (LocalMusicBean bean : queue) {
+            out.write("#EXTINF:");
+            out.write(String.valueOf(durationSeconds(bean)));
+            out.write(',');
+            if (bean.getSinger() != null && !bean.getSinger().isEmpty()) {
+                out.write(bean.getSinger());
+                out.write(" - ");
+            }
+            out.write(bean.getSong() != null ? bean.getSong() : "");
+            out.write('\n');
+            out.write(bean.getPath());
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    // 先写临时文件再重命名，导出失败不会破坏已有的文件
+    public static void exportTo(File playlist, List<LocalMusicBean> queue) throws IOException {
+        File tmp = new File(playlist.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            write(writer, queue);
+        }
+        if (!tmp.renameTo(playlist)) {
+            tmp.delete();
+            throw new IOException("无法写入播放列表: " + playlist);
+        }
+    }
+
+    private static long parseSeconds(String text) {
+        try {
+            double seconds = Double.parseDouble(text.trim());
+            return seconds < 0 ? -1 : (long) (seconds * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long durationSeconds(LocalMusicBean bean) {
+        long millis = LibraryIndex.durationMillis(bean);
+        return millis < 0 ? -1 : millis / 1000;
+    }
+}
@@ -9,7 +9,10 @@ import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.util.Log;
 import android.view.View;
@@ -23,6 +26,7 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,13 +34,16 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private static final int REQUEST_STORAGE_PERMISSION = 1;
     private static final String TAG = "MainActivity";
 
-    private ImageView nextIv, playIv, lastIv;
+    private ImageView nextIv, playIv, lastIv, iconIv;
     private TextView singerTv, songTv;
     private RecyclerView musicRv;
     private List<LocalMusicBean> mDatas; // 数据源
     private LocalMusicAdapter adapter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private MusicService musicService;
     private boolean isServiceBound = false;
+    private boolean isLibraryLoaded = false;
+    private Uri pendingPlaylist; // 从其他应用打开的播放列表，曲库加载完成后导入
 
     // 服务连接回调
     private ServiceConnection serviceConnection = new ServiceConnection() {
@@ -46,7 +53,8 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             musicService = binder.getService();
             isServiceBound = true;
             musicService.setMusicData(mDatas); // 设置音乐数据
-            updateSongInfo(musicService.getCurrentPlayPosition()); // 更新当前音乐信息
+            updateSongInfo(); // 更新当前音乐信息
+            importPendingPlaylist();
         }
 
         @Override
@@ -66,6 +74,8 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         musicRv.setAdapter(adapter);
         musicRv.setLayoutManager(new LinearLayoutManager(this));
 
+        pendingPlaylist = playlistFromIntent(getIntent());
+
         // 检查存储权限
         checkStoragePermission();
 
@@ -104,6 +114,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
     private void setEventListener() {
         adapter.setOnItemClickListener((view, position) -> {
+            if (isServiceBound) {
+                musicService.playLibrary(); // 从曲库选歌，播放队列回到整个曲库
+            }
             Intent intent = new Intent(MainActivity.this, MusicPlayActivity.class);
             intent.putExtra("position", position); // 传递位置
             startActivity(intent); // 启动播放活动
@@ -112,22 +125,104 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         nextIv.setOnClickListener(this);
         playIv.setOnClickListener(this);
         lastIv.setOnClickListener(this);
+        iconIv.setOnLongClickListener(v -> {
+            exportQueue(); // 长按封面导出当前播放队列
+            return true;
+        });
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        Uri playlist = playlistFromIntent(intent);
+        if (playlist != null) {
+            pendingPlaylist = playlist;
+            importPendingPlaylist();
+        }
+    }
+
+    // 取出通过 ACTION_VIEW 打开的 M3U/M3U8 地址，由服务在后台通过 ContentResolver 读取
+    private Uri playlistFromIntent(Intent intent) {
+        if (intent == null || !Intent.ACTION_VIEW.equals(intent.getAction())) return null;
+        return intent.getData();
+    }
+
+    // 曲库加载完成并且连上服务后才能解析播放列表
+    private void importPendingPlaylist() {
+        if (pendingPlaylist == null || !isServiceBound || !isLibraryLoaded) return;
+        Uri playlist = pendingPlaylist;
+        pendingPlaylist = null;
+        musicService.importPlaylist(playlist, new MusicService.OnPlaylistImportedListener() {
+            @Override
+            public void onPlaylistImported(M3uPlaylist.ImportResult result) {
+                if (isDestroyed()) return;
+                updateSongInfo();
+                Toast.makeText(MainActivity.this, "导入 " + result.getResolved().size() + " 首, 无法识别 "
+                        + result.getUnresolvedCount() + " 首", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onPlaylistImportFailed(String message) {
+                if (isDestroyed()) return;
+                Toast.makeText(MainActivity.this, "导入播放列表失败: " + message, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    // 导出到应用专属的音乐目录，不需要额外的存储权限
+    private void exportQueue() {
+        if (!isServiceBound) return;
+        File playlist = new File(getExternalFilesDir(Environment.DIRECTORY_MUSIC), "queue.m3u8");
+        musicService.exportQueue(playlist, new MusicService.OnPlaylistExportedListener() {
+            @Override
+            public void onPlaylistExported(File playlist) {
+                if (isDestroyed()) return;
+                Toast.makeText(MainActivity.this, "播放队列已导出到 " + playlist.getPath(), Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onPlaylistExportFailed(String message) {
+                if (isDestroyed()) return;
+                Toast.makeText(MainActivity.this, "导出播放列表失败: " + message, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
-    private void updateSongInfo(int position) {
-        if (position >= 0 && position < mDatas.size()) {
-            LocalMusicBean musicBean = mDatas.get(position);
+    // 显示播放队列中的当前歌曲，导入播放列表后队列和列表中的歌曲不一定对应
+    private void updateSongInfo() {
+        LocalMusicBean musicBean = isServiceBound ? musicService.getCurrentMusic() : null;
+        if (musicBean != null) {
             singerTv.setText(musicBean.getSinger());
             songTv.setText(musicBean.getSong());
         } else {
-            // 处理无效的索引
+            // 播放队列为空
             singerTv.setText("");
             songTv.setText("");
         }
     }
 
+    // 在调度器的用户可见通道查询歌曲，查询完成后回到主线程刷新列表
     private void loadLocalMusicData() {
         ContentResolver resolver = getContentResolver();
+        BackgroundScheduler.getInstance().submit(BackgroundScheduler.Lane.USER_VISIBLE, TAG + ":load", () -> {
+            List<LocalMusicBean> result = queryLocalMusic(resolver);
+            mainHandler.post(() -> {
+                if (isDestroyed()) return;
+                mDatas.clear();
+                mDatas.addAll(result);
+                adapter.notifyDataSetChanged();
+                isLibraryLoaded = true;
+                if (isServiceBound) {
+                    musicService.setMusicData(mDatas); // 设置给音乐服务
+                    importPendingPlaylist();
+                }
+                findDuplicates(); // 后台查找重复歌曲
+            });
+        });
+    }
+
+    private List<LocalMusicBean> queryLocalMusic(ContentResolver resolver) {
+        List<LocalMusicBean> result = new ArrayList<>();
         Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI; // 外部内容 URI
         Cursor cursor = resolver.query(uri, null, null, null, null);
 
@@ -139,32 +234,32 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 long durationMillis = cursor.getLong(cursor.getColumnIndex(MediaStore.Audio.Media.DURATION)); // 时长
 
                 if (path != null) {
-                    LocalMusicBean bean = new LocalMusicBean(String.valueOf(mDatas.size() + 1), song, singer, "", convertMillisToTimeFormat(durationMillis), path);
-                    mDatas.add(bean);
+                    LocalMusicBean bean = new LocalMusicBean(String.valueOf(result.size() + 1), song, singer, "", durationMillis, path);
+                    result.add(bean);
                 }
             }
             cursor.close();
         } else {
             Log.e(TAG, "无法查询音频文件，Cursor 为 null");
         }
-
-        adapter.notifyDataSetChanged();
-        if (isServiceBound) {
-            musicService.setMusicData(mDatas); // 设置给音乐服务
-        }
+        return result;
     }
 
-    // 转换毫秒为 mm:ss 格式
-    private String convertMillisToTimeFormat(long millis) {
-        int minutes = (int) (millis / 1000) / 60;
-        int seconds = (int) (millis / 1000) % 60;
-        return String.format("%02d:%02d", minutes, seconds); // 格式化为 mm:ss
+    private void findDuplicates() {
+        DuplicateFinder.getInstance().findAsync(mDatas, result -> {
+            if (isDestroyed() || result.getDuplicateCount() == 0) return;
+            adapter.collapseDuplicates(result); // 列表中折叠重复歌曲
+            if (isServiceBound) {
+                musicService.setMusicData(mDatas); // 曲库去掉重复歌曲，导入的播放队列不受影响
+            }
+        });
     }
 
     private void initView() {
         nextIv = findViewById(R.id.local_music_bottom_iv_next);
         playIv = findViewById(R.id.local_music_bottom_iv_play);
         lastIv = findViewById(R.id.local_music_bottom_iv_last);
+        iconIv = findViewById(R.id.local_music_bottom_iv_icon);
         singerTv = findViewById(R.id.local_music_bottom_iv_singer);
         songTv = findViewById(R.id.local_music_bottom_iv_song);
         musicRv = findViewById(R.id.local_music_rv);
@@ -187,6 +282,12 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheCoordinator.getInstance().onTrimMemory(level); // 按内存紧张程度释放缓存
+    }
+
     @Override
     public void onClick(View view) {
         if (!isServiceBound) return;
@@ -194,7 +295,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         switch (view.getId()) {
             case R.id.local_music_bottom_iv_last:
                 musicService.previousMusic(); // 上一首
-                updateSongInfo(musicService.getCurrentPlayPosition()); // 更新歌曲信息
+                updateSongInfo(); // 更新歌曲信息
                 playIv.setImageResource(R.mipmap.stop); // 更新播放按钮图标
                 break;
             case R.id.local_music_bottom_iv_play:
@@ -202,13 +303,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                     musicService.pauseMusic(); // 暂停播放
                     playIv.setImageResource(R.mipmap.play); // 设置为播放图标
                 } else {
-                    musicService.playMusic(musicService.getCurrentPlayPosition()); // 播放当前音乐
+                    // 播放当前音乐；正在播放的歌曲不在队列中时从第一首开始
+                    musicService.playMusic(Math.max(0, musicService.getCurrentPlayPosition()));
                     playIv.setImageResource(R.mipmap.stop); // 设置为停止图标
                 }
                 break;
             case R.id.local_music_bottom_iv_next:
                 musicService.nextMusic(); // 下一首
-                updateSongInfo(musicService.getCurrentPlayPosition()); // 更新歌曲信息
+                updateSongInfo(); // 更新歌曲信息
                 playIv.setImageResource(R.mipmap.stop); // 更新播放按钮图标
                 break;
         }
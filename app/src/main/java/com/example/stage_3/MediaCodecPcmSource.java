@@ -0,0 +1,146 @@
+package com.example.stage_3;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * 用 MediaExtractor + MediaCodec 把压缩音频（mp3、aac 等）流式解码成 PCM。
+ */
+public class MediaCodecPcmSource implements PcmSource {
+    private static final long TIMEOUT_US = 10000;
+
+    private final MediaExtractor extractor = new MediaExtractor();
+    private final MediaCodec codec;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private int sampleRate;
+    private int channelCount;
+    private boolean inputDone = false;
+    private boolean outputDone = false;
+    private ShortBuffer pending; // 当前输出缓冲区中尚未读取的样本
+    private int pendingIndex = -1;
+
+    public MediaCodecPcmSource(String path) throws IOException {
+        // 任何一步失败都要释放 extractor，否则每个无法读取的文件都会泄漏
+        MediaCodec decoder = null;
+        try {
+            extractor.setDataSource(path);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) {
+                throw new IOException("没有找到音轨: " + path);
+            }
+
+            sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            decoder.configure(format, null, null, 0);
+            decoder.start();
+        } catch (IOException | RuntimeException e) {
+            if (decoder != null) {
+                decoder.release();
+            }
+            extractor.release();
+            throw e instanceof IOException ? (IOException) e : new IOException("创建解码器失败: " + e.getMessage(), e);
+        }
+        codec = decoder;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    @Override
+    public int read(float[] buffer) throws IOException {
+        int count = 0;
+        try {
+            while (count < buffer.length) {
+                if (pending != null) {
+                    int n = Math.min(buffer.length - count, pending.remaining());
+                    for (int i = 0; i < n; i++) {
+                        buffer[count++] = pending.get() / 32768f;
+                    }
+                    if (!pending.hasRemaining()) {
+                        codec.releaseOutputBuffer(pendingIndex, false);
+                        pending = null;
+                    }
+                    continue;
+                }
+                if (outputDone) break;
+                feedInput();
+                drainOutput();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("解码失败: " + e.getMessage(), e);
+        }
+        return count == 0 && outputDone ? -1 : count;
+    }
+
+    private void feedInput() {
+        if (inputDone) return;
+        int index = codec.dequeueInputBuffer(TIMEOUT_US);
+        if (index < 0) return;
+        ByteBuffer input = codec.getInputBuffer(index);
+        int size = extractor.readSampleData(input, 0);
+        if (size < 0) {
+            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+        } else {
+            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+        }
+    }
+
+    private void drainOutput() {
+        int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+        if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            MediaFormat format = codec.getOutputFormat();
+            sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            return;
+        }
+        if (index < 0) return;
+
+        if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+            outputDone = true;
+        }
+        if (info.size == 0) {
+            codec.releaseOutputBuffer(index, false);
+            return;
+        }
+        ByteBuffer output = codec.getOutputBuffer(index);
+        output.position(info.offset);
+        output.limit(info.offset + info.size);
+        pending = output.order(ByteOrder.nativeOrder()).asShortBuffer(); // 默认输出 16 位 PCM
+        pendingIndex = index;
+    }
+
+    @Override
+    public void close() {
+        try {
+            codec.stop();
+        } catch (IllegalStateException ignored) {
+        }
+        codec.release();
+        extractor.release();
+    }
+}
@@ -27,6 +27,8 @@ public class MusicPlayActivity extends AppCompatActivity implements View.OnClick
     private ObjectAnimator animator;
     private Handler handler = new Handler();
     private Runnable updateRunnable;
+    private final char[] progressBuffer = new char[TimeFormatter.MAX_LENGTH]; // 复用的时间文本缓冲区
+    private final char[] totalBuffer = new char[TimeFormatter.MAX_LENGTH];
 
     // 服务连接回调
     private ServiceConnection serviceConnection = new ServiceConnection() {
@@ -113,17 +115,11 @@ public class MusicPlayActivity extends AppCompatActivity implements View.OnClick
             sb.setMax(musicService.getDuration()); // 设置SeekBar最大值
             sb.setProgress(musicService.getCurrentPosition()); // 设置SeekBar当前进度
 
-            tvTotal.setText(formatTime(musicService.getDuration())); // 设置总时长
-            tvProgress.setText(formatTime(musicService.getCurrentPosition())); // 设置当前播放时长
+            TimeFormatter.setTime(tvTotal, totalBuffer, musicService.getDuration()); // 设置总时长
+            TimeFormatter.setTime(tvProgress, progressBuffer, musicService.getCurrentPosition()); // 设置当前播放时长
         }
     }
 
-    private String formatTime(int time) {
-        int minutes = (time / 1000) / 60;
-        int seconds = (time / 1000) % 60;
-        return String.format("%02d:%02d", minutes, seconds); // 格式化为 mm:ss
-    }
-
     private void startUpdatingSeekBar() {
         updateRunnable = new Runnable() {
             @Override
@@ -5,25 +5,56 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.ContentResolver;
 import android.content.Intent;
+import android.database.Cursor;
 import android.media.MediaPlayer;
+import android.net.Uri;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.provider.OpenableColumns;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MusicService extends Service {
     private static final String TAG = "MusicService";
+    private static final float TARGET_LOUDNESS = -16f; // 目标响度 LUFS
     private MediaPlayer mediaPlayer;
-    private List<LocalMusicBean> musicData; // 音乐数据列表
-    private int currentPosition = 0; // 当前播放音乐的位置
+    private List<LocalMusicBean> musicData; // 音乐数据列表（播放队列）
+    private List<LocalMusicBean> library; // 完整的本地歌曲列表，导入播放列表时用来解析路径
+    private boolean queueImported = false; // 播放队列来自导入的播放列表，曲库刷新时不覆盖
+    private int currentPosition = 0; // 当前播放音乐在队列中的位置，正在播放的歌曲不在队列中时为 -1
+    private String currentPath; // 当前播放音乐的路径
+    private LocalMusicBean currentMusic; // 正在播放的歌曲，不一定在当前播放队列中
     private boolean isPaused = false; // 标记音乐是否处于暂停状态
+    private volatile boolean isPreparing = false; // 正在准备播放，对延迟敏感
+    private LoudnessCache loudnessCache; // 每首歌的响度分析结果
+    private LoudnessScanner loudnessScanner; // 后台响度分析
 
     private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface OnPlaylistImportedListener {
+        void onPlaylistImported(M3uPlaylist.ImportResult result);
+
+        void onPlaylistImportFailed(String message);
+    }
+
+    public interface OnPlaylistExportedListener {
+        void onPlaylistExported(File playlist);
+
+        void onPlaylistExportFailed(String message);
+    }
 
     public class LocalBinder extends Binder {
         MusicService getService() {
@@ -36,6 +67,9 @@ public class MusicService extends Service {
         super.onCreate();
         mediaPlayer = new MediaPlayer();
         createNotificationChannel();
+        loudnessCache = new LoudnessCache(new File(getFilesDir(), "loudness.cache"));
+        loudnessScanner = new LoudnessScanner(loudnessCache, () -> isPreparing() || isPlaying());
+        CacheCoordinator.getInstance().register(loudnessCache);
 
         mediaPlayer.setOnCompletionListener(mp -> nextMusic()); // 播放完成后自动播放下一曲
     }
@@ -49,14 +83,53 @@ public class MusicService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        loudnessScanner.shutdown(); // 先停止分析，再释放播放器
+        CacheCoordinator.getInstance().unregister(loudnessCache);
         if (mediaPlayer != null) {
             mediaPlayer.release(); // 释放MediaPlayer资源
             mediaPlayer = null;
         }
     }
 
+    // 更新曲库；播放队列是导入的播放列表时保留，直到用户选择回到曲库播放
     public void setMusicData(List<LocalMusicBean> musicData) {
-        this.musicData = musicData; // 设置音乐列表
+        this.library = musicData;
+        if (!queueImported) {
+            setQueue(musicData); // 设置音乐列表
+        }
+        loudnessScanner.enqueue(musicData); // 后台分析还没有响度数据的歌曲
+    }
+
+    // 用户从曲库中选歌时调用，放弃导入的播放队列，改为播放整个曲库
+    public void playLibrary() {
+        if (library == null) return;
+        queueImported = false;
+        setQueue(library);
+    }
+
+    // 只替换播放队列，不改变曲库
+    private void setQueue(List<LocalMusicBean> queue) {
+        this.musicData = queue;
+        // 列表变化（例如折叠重复歌曲、导入播放列表）后，按路径重新定位当前歌曲
+        if (currentPath == null) return;
+        currentPosition = indexOf(currentPath);
+        if (currentPosition < 0) {
+            // 当前歌曲作为重复歌曲被折叠了，定位到保留下来的那首
+            DuplicateFinder.Result duplicates = DuplicateFinder.getInstance().getLastResult();
+            if (duplicates != null) {
+                currentPosition = indexOf(duplicates.getOriginalPath(currentPath));
+            }
+        }
+        // 仍然找不到时保持 -1，正在播放的歌曲继续播放，下一曲从队列第一首开始
+    }
+
+    private int indexOf(String path) {
+        for (int i = 0; i < musicData.size(); i++) {
+            if (path.equals(musicData.get(i).getPath())) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public void playMusic(int position) {
@@ -68,24 +141,148 @@ public class MusicService extends Service {
 
         try {
             currentPosition = position;
+            currentMusic = musicData.get(position);
+            currentPath = currentMusic.getPath();
+            setPreparing(true); // 准备期间后台任务让路
             mediaPlayer.reset(); // 重置MediaPlayer
             mediaPlayer.setDataSource(musicData.get(position).getPath()); // 设置音乐数据源
             mediaPlayer.prepare(); // 准备播放
+            applyTrackGain(currentPath); // 按响度调整音量
             mediaPlayer.start(); // 开始播放
+            setPreparing(false);
 
             isPaused = false; // 重置暂停状态
             updateNotification(musicData.get(position).getSong()); // 更新通知
             startForeground(1, getNotification(musicData.get(position).getSong())); // 开始前台服务
         } catch (Exception e) {
+            setPreparing(false);
             Log.e(TAG, "播放音乐失败: " + e.getMessage());
         }
     }
 
+    private void setPreparing(boolean preparing) {
+        isPreparing = preparing;
+        BackgroundScheduler.getInstance().setBackoff(preparing);
+    }
+
+    public boolean isPreparing() {
+        return isPreparing; // 是否处于准备播放阶段
+    }
+
+    // 在后台流式读取 M3U/M3U8 播放列表，解析成功的歌曲作为新的播放队列；结果和失败都回调到主线程。
+    // 通过 ContentResolver 打开，其他应用分享的 content:// 地址和 file:// 地址都能读取
+    public void importPlaylist(Uri playlist, OnPlaylistImportedListener listener) {
+        if (library == null) {
+            listener.onPlaylistImportFailed("曲库还没有加载完成");
+            return;
+        }
+        final List<LocalMusicBean> snapshot = new ArrayList<>(library);
+        final DuplicateFinder.Result duplicates = DuplicateFinder.getInstance().getLastResult();
+        final ContentResolver resolver = getContentResolver();
+        BackgroundScheduler.getInstance().submit(BackgroundScheduler.Lane.USER_VISIBLE, "import:" + playlist, () -> {
+            try (InputStream in = resolver.openInputStream(playlist)) {
+                if (in == null) throw new IOException("无法打开 " + playlist);
+                File baseDir = null; // content:// 地址没有所在目录，相对路径只能按文件名匹配
+                String name;
+                if (ContentResolver.SCHEME_FILE.equals(playlist.getScheme()) && playlist.getPath() != null) {
+                    File file = new File(playlist.getPath());
+                    baseDir = file.getAbsoluteFile().getParentFile();
+                    name = file.getName();
+                } else {
+                    name = displayName(resolver, playlist);
+                }
+                LibraryIndex index = new LibraryIndex(snapshot);
+                if (duplicates != null) {
+                    index.addDuplicates(duplicates); // 指向被折叠歌曲的条目解析到保留的那首
+                }
+                M3uPlaylist.ImportResult result = M3uPlaylist.importFrom(in, name, baseDir, index);
+                Log.d(TAG, "导入播放列表: 成功 " + result.getResolved().size() + " 首, 无法解析 " + result.getUnresolvedCount() + " 首");
+                mainHandler.post(() -> {
+                    if (!result.getResolved().isEmpty()) {
+                        queueImported = true;
+                        setQueue(result.getResolved());
+                    }
+                    listener.onPlaylistImported(result);
+                });
+            } catch (IOException | SecurityException e) {
+                Log.e(TAG, "导入播放列表失败: " + e.getMessage());
+                mainHandler.post(() -> listener.onPlaylistImportFailed(e.getMessage()));
+            }
+        });
+    }
+
+    // 文件名用来判断 .m3u8 / .m3u，查不到时用地址的最后一段
+    private static String displayName(ContentResolver resolver, Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && cursor.getString(0) != null) {
+                return cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "无法查询播放列表文件名: " + e.getMessage());
+        }
+        return uri.getLastPathSegment();
+    }
+
+    // 在后台把当前播放队列导出为 M3U8 播放列表，结果回调到主线程
+    public void exportQueue(File playlist, OnPlaylistExportedListener listener) {
+        if (musicData == null || musicData.isEmpty()) {
+            listener.onPlaylistExportFailed("播放队列为空");
+            return;
+        }
+        final List<LocalMusicBean> snapshot = new ArrayList<>(musicData);
+        BackgroundScheduler.getInstance().submit(BackgroundScheduler.Lane.USER_VISIBLE, "export:" + playlist.getPath(), () -> {
+            try {
+                M3uPlaylist.exportTo(playlist, snapshot);
+                mainHandler.post(() -> listener.onPlaylistExported(playlist));
+            } catch (IOException e) {
+                Log.e(TAG, "导出播放列表失败: " + e.getMessage());
+                mainHandler.post(() -> listener.onPlaylistExportFailed(e.getMessage()));
+            }
+        });
+    }
+
+    // 根据响度分析结果调整音量，还没分析过的歌曲按原音量播放
+    private void applyTrackGain(String path) {
+        LoudnessCache.Entry entry = loudnessCache.get(path);
+        if (entry == null && !loudnessCache.isLoaded()) {
+            // 记录可能因内存紧张被释放了，在后台从缓存文件读回，读到时还在播这首就补上音量
+            BackgroundScheduler.getInstance().submit(BackgroundScheduler.Lane.PREFETCH, "loudness-entry:" + path, () -> {
+                LoudnessCache.Entry loaded = loudnessCache.getOrLoad(path);
+                if (loaded == null) return;
+                mainHandler.post(() -> {
+                    if (mediaPlayer != null && path.equals(currentPath)) {
+                        setTrackVolume(loaded);
+                    }
+                });
+            });
+        }
+        setTrackVolume(entry);
+        prefetchTrackGain(currentPosition + 1);
+    }
+
+    // 提前读回下一首的响度记录，切歌时不用再等
+    private void prefetchTrackGain(int position) {
+        if (musicData == null || musicData.isEmpty() || loudnessCache.isLoaded()) return;
+        final String path = musicData.get(position % musicData.size()).getPath();
+        if (loudnessCache.get(path) != null) return;
+        BackgroundScheduler.getInstance().submit(BackgroundScheduler.Lane.PREFETCH, "loudness-entry:" + path, () -> loudnessCache.getOrLoad(path));
+    }
+
+    private void setTrackVolume(LoudnessCache.Entry entry) {
+        float volume = entry != null ? LoudnessAnalyzer.volumeFor(entry.loudness, entry.peak, TARGET_LOUDNESS) : 1f;
+        mediaPlayer.setVolume(volume, volume);
+    }
+
+    // 响度分析吞吐量，单位：首/分钟
+    public float getLoudnessTracksPerMinute() {
+        return loudnessScanner.getTracksPerMinute();
+    }
+
     public void pauseMusic() {
         if (mediaPlayer.isPlaying()) {
             mediaPlayer.pause(); // 暂停播放
             isPaused = true; // 更新暂停状态
-            updateNotification(musicData.get(currentPosition).getSong()); // 更新通知
+            updateNotification(currentMusic.getSong()); // 更新通知
         }
     }
 
@@ -93,7 +290,7 @@ public class MusicService extends Service {
         if (isPaused) {
             mediaPlayer.start(); // 恢复播放
             isPaused = false; // 重置暂停状态
-            updateNotification(musicData.get(currentPosition).getSong()); // 更新通知
+            updateNotification(currentMusic.getSong()); // 更新通知
         }
     }
 
@@ -106,7 +303,9 @@ public class MusicService extends Service {
     }
 
     public void previousMusic() {
-        if (musicData != null && currentPosition > 0) {
+        if (musicData != null && currentPosition < 0) {
+            playMusic(0); // 正在播放的歌曲不在队列中，从第一曲开始
+        } else if (musicData != null && currentPosition > 0) {
             playMusic(currentPosition - 1); // 播放上一曲
         } else if (musicData != null) {
             playMusic(musicData.size() - 1); // 如果是第一曲，播放最后一曲
@@ -114,11 +313,18 @@ public class MusicService extends Service {
     }
 
     public boolean isPlaying() {
-        return mediaPlayer.isPlaying(); // 返回是否在播放
+        return mediaPlayer != null && mediaPlayer.isPlaying(); // 返回是否在播放
     }
 
     public int getCurrentPlayPosition() {
-        return currentPosition; // 返回当前播放音乐的位置
+        return currentPosition; // 返回当前播放音乐在播放队列中的位置，不在队列中时为 -1
+    }
+
+    // 返回正在播放的歌曲；还没有播放过时返回队列中的当前歌曲，队列为空时返回 null
+    public LocalMusicBean getCurrentMusic() {
+        if (currentMusic != null) return currentMusic;
+        if (musicData == null || currentPosition < 0 || currentPosition >= musicData.size()) return null;
+        return musicData.get(currentPosition);
     }
 
     public int getCurrentPosition() {
@@ -191,6 +397,13 @@ public class MusicService extends Service {
         }
     }
 
+    // 后台播放时按内存紧张程度释放缓存，尽量以最小占用留在前台服务状态
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheCoordinator.getInstance().onTrimMemory(level);
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null && intent.getAction() != null) {
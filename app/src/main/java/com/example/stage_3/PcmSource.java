@@ -0,0 +1,17 @@
+package com.example.stage_3;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 按块读取解码后的 PCM 数据，样本为交错排列的 [-1, 1] 浮点数。
+ */
+public interface PcmSource extends Closeable {
+
+    int getSampleRate(); // 采样率，第一次 read 之后才保证有效
+
+    int getChannelCount(); // 声道数，第一次 read 之后才保证有效
+
+    // 读取若干样本到 buffer，返回读取的样本数，读完返回 -1
+    int read(float[] buffer) throws IOException;
+}
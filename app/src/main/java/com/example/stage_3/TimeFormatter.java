@@ -0,0 +1,42 @@
+package com.example.stage_3;
+
+import android.widget.TextView;
+
+/**
+ * 把毫秒格式化为 mm:ss，结果写入调用方复用的 char[]，不创建 String 和 Formatter。
+ * 歌曲列表每绑定一行、播放界面每秒都会调用，放在热路径上不能产生垃圾。
+ */
+public final class TimeFormatter {
+    public static final int MAX_LENGTH = 20; // long 范围内的最大分钟数加上 ":ss"
+
+    private TimeFormatter() {
+    }
+
+    // 写入 buffer 并返回字符数；分钟不足两位补 0，超过两位按实际位数输出，与 %02d:%02d 一致
+    public static int format(long millis, char[] buffer) {
+        long totalSeconds = Math.max(0, millis) / 1000;
+        long minutes = totalSeconds / 60;
+        int seconds = (int) (totalSeconds % 60);
+
+        int digits = 2;
+        for (long m = minutes / 100; m > 0; m /= 10) {
+            digits++;
+        }
+        long m = minutes;
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[i] = (char) ('0' + m % 10);
+            m /= 10;
+        }
+        buffer[digits] = ':';
+        buffer[digits + 1] = (char) ('0' + seconds / 10);
+        buffer[digits + 2] = (char) ('0' + seconds % 10);
+        return digits + 3;
+    }
+
+    // 直接把 char[] 交给 TextView，TextView 内部复用同一个 CharWrapper；
+    // TextView 不会复制内容，所以每个 TextView 要用自己的 buffer
+    public static void setTime(TextView view, char[] buffer, long millis) {
+        int length = format(millis, buffer);
+        view.setText(buffer, 0, length);
+    }
+}
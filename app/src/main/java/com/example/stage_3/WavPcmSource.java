@@ -0,0 +1,135 @@
+package com.example.stage_3;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 纯 Java 的 WAV 读取，支持 8/16/24 位整数 PCM，流式读取不加载整个文件。
+ */
+public class WavPcmSource implements PcmSource {
+    private final InputStream in;
+    private int sampleRate;
+    private int channelCount;
+    private int bytesPerSample;
+    private long remaining; // data 块中剩余的字节数
+    private byte[] bytes = new byte[0];
+
+    public WavPcmSource(InputStream in) throws IOException {
+        this.in = new BufferedInputStream(in);
+        readHeader();
+    }
+
+    private void readHeader() throws IOException {
+        byte[] header = new byte[12];
+        readFully(header, 12);
+        if (!"RIFF".equals(new String(header, 0, 4, "US-ASCII")) || !"WAVE".equals(new String(header, 8, 4, "US-ASCII"))) {
+            throw new IOException("不是 WAV 文件");
+        }
+
+        byte[] chunk = new byte[8];
+        while (true) {
+            readFully(chunk, 8);
+            String id = new String(chunk, 0, 4, "US-ASCII");
+            long size = readLittleEndian(chunk, 4, 4) & 0xffffffffL;
+            if ("fmt ".equals(id)) {
+                byte[] fmt = new byte[(int) size];
+                readFully(fmt, fmt.length);
+                int format = (int) readLittleEndian(fmt, 0, 2);
+                channelCount = (int) readLittleEndian(fmt, 2, 2);
+                sampleRate = (int) readLittleEndian(fmt, 4, 4);
+                int bits = (int) readLittleEndian(fmt, 14, 2);
+                // 1 为 PCM，0xFFFE 为 WAVE_FORMAT_EXTENSIBLE
+                if ((format != 1 && format != 0xFFFE) || (bits != 8 && bits != 16 && bits != 24)) {
+                    throw new IOException("不支持的 WAV 格式: format=" + format + ", bits=" + bits);
+                }
+                bytesPerSample = bits / 8;
+                if ((size & 1) != 0) skipFully(1);
+            } else if ("data".equals(id)) {
+                if (bytesPerSample == 0) throw new IOException("WAV 缺少 fmt 块");
+                remaining = size;
+                return;
+            } else {
+                skipFully(size + (size & 1)); // 块按偶数字节对齐
+            }
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    @Override
+    public int read(float[] buffer) throws IOException {
+        if (remaining <= 0) return -1;
+        int samples = (int) Math.min(buffer.length, remaining / bytesPerSample);
+        if (samples == 0) return -1;
+        int length = samples * bytesPerSample;
+        if (bytes.length < length) bytes = new byte[length];
+
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) break;
+            read += n;
+        }
+        samples = read / bytesPerSample;
+        remaining = samples == 0 ? 0 : remaining - read;
+
+        for (int i = 0; i < samples; i++) {
+            int offset = i * bytesPerSample;
+            switch (bytesPerSample) {
+                case 1:
+                    buffer[i] = ((bytes[offset] & 0xff) - 128) / 128f; // 8 位为无符号
+                    break;
+                case 2:
+                    buffer[i] = (short) readLittleEndian(bytes, offset, 2) / 32768f;
+                    break;
+                default:
+                    buffer[i] = ((int) (readLittleEndian(bytes, offset, 3) << 8) >> 8) / 8388608f;
+                    break;
+            }
+        }
+        return samples == 0 ? -1 : samples;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readFully(byte[] b, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(b, read, length - read);
+            if (n < 0) throw new EOFException();
+            read += n;
+        }
+    }
+
+    private void skipFully(long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static long readLittleEndian(byte[] b, int offset, int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (b[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
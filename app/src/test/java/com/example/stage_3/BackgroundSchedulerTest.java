@@ -0,0 +1,174 @@
+package com.example.stage_3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class BackgroundSchedulerTest {
+    private final AtomicLong now = new AtomicLong(0);
+    private final CountDownLatch gate = new CountDownLatch(1); // 阻塞任务在这里等待
+    private BackgroundScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new BackgroundScheduler(new BackgroundScheduler.Platform() {
+            @Override
+            public long elapsedRealtime() {
+                return now.get();
+            }
+
+            @Override
+            public void setThreadPriority(int priority) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        gate.countDown();
+        scheduler.shutdownNow();
+    }
+
+    private Runnable blocking(CountDownLatch done) {
+        return () -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            done.countDown();
+        };
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void submit_respectsLaneParallelism() throws Exception {
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(BackgroundScheduler.Lane.MAINTENANCE, "m" + i, blocking(done));
+        }
+        waitUntil(() -> scheduler.getRunningCount(BackgroundScheduler.Lane.MAINTENANCE) == 1);
+        assertEquals(2, scheduler.getQueueDepth(BackgroundScheduler.Lane.MAINTENANCE));
+
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitUntil(() -> scheduler.getRunningCount(BackgroundScheduler.Lane.MAINTENANCE) == 0);
+        assertEquals(0, scheduler.getQueueDepth(BackgroundScheduler.Lane.MAINTENANCE));
+    }
+
+    @Test
+    public void submit_sameKeyReturnsPendingJob() {
+        scheduler.setBackoff(true);
+        BackgroundScheduler.Job first = scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "k", () -> { });
+        assertSame(first, scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "k", () -> { }));
+        assertEquals(1, scheduler.getQueueDepth(BackgroundScheduler.Lane.PREFETCH));
+    }
+
+    @Test
+    public void backoff_onlyDispatchesUserVisibleLane() throws Exception {
+        scheduler.setBackoff(true);
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.submit(BackgroundScheduler.Lane.MAINTENANCE, "m", done::countDown);
+        scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "p", done::countDown);
+        scheduler.submit(BackgroundScheduler.Lane.USER_VISIBLE, "u", done::countDown);
+        waitUntil(() -> done.getCount() == 2);
+        assertEquals(1, scheduler.getQueueDepth(BackgroundScheduler.Lane.PREFETCH));
+        assertEquals(1, scheduler.getQueueDepth(BackgroundScheduler.Lane.MAINTENANCE));
+
+        scheduler.setBackoff(false);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitNoBackoff_blocksUntilBackoffEnds() throws Exception {
+        scheduler.setBackoff(true);
+        CountDownLatch resumed = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                scheduler.awaitNoBackoff();
+                resumed.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        waiter.start();
+        assertFalse(resumed.await(50, TimeUnit.MILLISECONDS));
+        scheduler.setBackoff(false);
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancel_queuedJobNeverRunsAndFreesKey() throws Exception {
+        scheduler.setBackoff(true);
+        AtomicBoolean ran = new AtomicBoolean(false);
+        BackgroundScheduler.Job job = scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "k", () -> ran.set(true));
+        scheduler.cancel("k");
+        assertTrue(job.isCancelled());
+        assertEquals(0, scheduler.getQueueDepth(BackgroundScheduler.Lane.PREFETCH));
+
+        CountDownLatch done = new CountDownLatch(1);
+        BackgroundScheduler.Job again = scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "k", done::countDown);
+        assertNotSame(job, again);
+        scheduler.setBackoff(false);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void cancel_runningJobIsInterrupted() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        scheduler.submit(BackgroundScheduler.Lane.MAINTENANCE, "k", () -> {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.cancel("k");
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        waitUntil(() -> scheduler.getRunningCount(BackgroundScheduler.Lane.MAINTENANCE) == 0);
+    }
+
+    @Test
+    public void averageWait_countsJobsThatHaveStarted() throws Exception {
+        scheduler.setBackoff(true);
+        CountDownLatch done = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Runnable task = blocking(done);
+        scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "b", () -> {
+            started.countDown();
+            task.run();
+        });
+        now.set(100);
+        scheduler.setBackoff(false);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(100, scheduler.getAverageWaitMillis(BackgroundScheduler.Lane.PREFETCH)); // 还在运行也计入
+
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitUntil(() -> scheduler.getRunningCount(BackgroundScheduler.Lane.PREFETCH) == 0);
+        CountDownLatch second = new CountDownLatch(1);
+        scheduler.submit(BackgroundScheduler.Lane.PREFETCH, "c", second::countDown);
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        waitUntil(() -> scheduler.getRunningCount(BackgroundScheduler.Lane.PREFETCH) == 0);
+        assertEquals(50, scheduler.getAverageWaitMillis(BackgroundScheduler.Lane.PREFETCH));
+        assertEquals(100, scheduler.getMaxWaitMillis(BackgroundScheduler.Lane.PREFETCH));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.stage_3;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CacheCoordinatorTest {
+    private final CacheCoordinator coordinator = CacheCoordinator.getInstance();
+    private final List<FakeCache> registered = new ArrayList<>();
+    private final List<String> trimOrder = new ArrayList<>();
+
+    private class FakeCache implements CacheCoordinator.TrimmableCache {
+        final String name;
+        final int cost;
+        final int minLevel;
+        long size;
+
+        FakeCache(String name, long size, int cost, int minLevel) {
+            this.name = name;
+            this.size = size;
+            this.cost = cost;
+            this.minLevel = minLevel;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            return size;
+        }
+
+        @Override
+        public int getRebuildCost() {
+            return cost;
+        }
+
+        @Override
+        public int getMinTrimLevel() {
+            return minLevel;
+        }
+
+        @Override
+        public long trim(long bytesToFree) {
+            trimOrder.add(name);
+            long freed = Math.min(size, bytesToFree);
+            size -= freed;
+            return freed;
+        }
+    }
+
+    private FakeCache register(String name, long size, int cost, int minLevel) {
+        FakeCache cache = new FakeCache(name, size, cost, minLevel);
+        coordinator.register(cache);
+        registered.add(cache);
+        return cache;
+    }
+
+    @After
+    public void tearDown() {
+        for (FakeCache cache : registered) {
+            coordinator.unregister(cache);
+        }
+    }
+
+    @Test
+    public void trimFraction_growsWithPressure() {
+        assertEquals(1f, CacheCoordinator.trimFraction(ComponentCallbacks2.TRIM_MEMORY_COMPLETE), 0f);
+        assertEquals(0.5f, CacheCoordinator.trimFraction(ComponentCallbacks2.TRIM_MEMORY_MODERATE), 0f);
+        assertEquals(0.25f, CacheCoordinator.trimFraction(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND), 0f);
+        assertEquals(0.1f, CacheCoordinator.trimFraction(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN), 0f);
+        assertEquals(0.75f, CacheCoordinator.trimFraction(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL), 0f);
+        assertEquals(0.5f, CacheCoordinator.trimFraction(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW), 0f);
+        assertEquals(0.25f, CacheCoordinator.trimFraction(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE), 0f);
+        assertEquals(0f, CacheCoordinator.trimFraction(0), 0f);
+    }
+
+    @Test
+    public void trim_cheapestFirstAndStopsWhenEnough() {
+        FakeCache expensive = register("expensive", 1000, 10, 0);
+        FakeCache cheap = register("cheap", 300, 1, 0);
+
+        assertEquals(200, coordinator.trim(200));
+        assertEquals(100, cheap.size);
+        assertEquals(1000, expensive.size);
+
+        trimOrder.clear();
+        assertEquals(600, coordinator.trim(600));
+        assertEquals(0, cheap.size);
+        assertEquals(500, expensive.size);
+        assertEquals("cheap", trimOrder.get(0));
+        assertEquals("expensive", trimOrder.get(1));
+    }
+
+    @Test
+    public void trim_skipsCachesBelowTheirMinLevel() {
+        FakeCache playback = register("playback", 500, 1, ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        FakeCache other = register("other", 500, 10, 0);
+
+        assertEquals(500, coordinator.getTrimmableSizeBytes(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(200, coordinator.trim(200, ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(500, playback.size);
+        assertEquals(300, other.size);
+
+        assertEquals(800, coordinator.getTrimmableSizeBytes(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(200, coordinator.trim(200, ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(300, playback.size);
+        assertEquals(300, other.size);
+    }
+}
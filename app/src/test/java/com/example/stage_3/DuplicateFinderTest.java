@@ -0,0 +1,94 @@
+package com.example.stage_3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFinderTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("duplicates").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static LocalMusicBean bean(File file, long durationMillis) {
+        return new LocalMusicBean("1", file.getName(), "", "", durationMillis, file.getPath());
+    }
+
+    @Test
+    public void sampleHash_sameContentSameHash() throws IOException {
+        byte[] content = random(300 * 1024, 1);
+        assertEquals(DuplicateFinder.sampleHash(write("a.mp3", content)), DuplicateFinder.sampleHash(write("b.mp3", content)));
+    }
+
+    @Test
+    public void sampleHash_differentSampledChunkDifferentHash() throws IOException {
+        byte[] content = random(300 * 1024, 1);
+        File a = write("a.mp3", content);
+        File b = write("b.mp3", content);
+        try (RandomAccessFile raf = new RandomAccessFile(b, "rw")) {
+            raf.seek(b.length() - 1); // 最后一个采样块覆盖文件末尾
+            raf.write(content[content.length - 1] ^ 0xff);
+        }
+        assertNotEquals(DuplicateFinder.sampleHash(a), DuplicateFinder.sampleHash(b));
+    }
+
+    @Test
+    public void sampleHash_smallFile() throws IOException {
+        assertEquals(DuplicateFinder.sampleHash(write("a.mp3", new byte[]{1, 2, 3})),
+                DuplicateFinder.sampleHash(write("b.mp3", new byte[]{1, 2, 3})));
+        assertNotEquals(DuplicateFinder.sampleHash(write("c.mp3", new byte[]{1, 2, 3})),
+                DuplicateFinder.sampleHash(write("d.mp3", new byte[]{1, 2, 4})));
+    }
+
+    @Test
+    public void groupCandidates_bySizeAndDuration() throws IOException {
+        LocalMusicBean a = bean(write("a.mp3", random(1000, 1)), 180400);
+        LocalMusicBean b = bean(write("b.mp3", random(1000, 2)), 180900); // 同一秒
+        LocalMusicBean c = bean(write("c.mp3", random(1000, 3)), 200000); // 时长不同
+        LocalMusicBean d = bean(write("d.mp3", random(2000, 4)), 180000); // 大小不同
+        LocalMusicBean missing = bean(new File(dir, "missing.mp3"), 180000);
+
+        Map<String, List<LocalMusicBean>> groups = DuplicateFinder.groupCandidates(Arrays.asList(a, b, c, d, missing));
+        assertEquals(1, groups.size());
+        assertEquals(Arrays.asList(a, b), groups.values().iterator().next());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.stage_3;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class LoudnessAnalyzerTest {
+
+    // 生成单声道 16 位 PCM 的 1kHz 正弦波 WAV
+    private static byte[] sineWav(int sampleRate, double amplitude, double seconds) {
+        int samples = (int) (sampleRate * seconds);
+        ByteBuffer buffer = ByteBuffer.allocate(44 + samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + samples * 2).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16);
+        buffer.put("data".getBytes()).putInt(samples * 2);
+        for (int i = 0; i < samples; i++) {
+            buffer.putShort((short) Math.round(amplitude * 32767 * Math.sin(2 * Math.PI * 1000 * i / sampleRate)));
+        }
+        return buffer.array();
+    }
+
+    private static LoudnessAnalyzer.Result analyze(byte[] wav) throws Exception {
+        try (PcmSource source = new WavPcmSource(new ByteArrayInputStream(wav))) {
+            return LoudnessAnalyzer.analyze(source, null);
+        }
+    }
+
+    @Test
+    public void sine_matchesReferenceLoudness() throws Exception {
+        // -20dBFS 的 1kHz 正弦波，参考值为 -23.01 LUFS
+        LoudnessAnalyzer.Result result = analyze(sineWav(48000, 0.1, 5));
+        assertEquals(-23.01, result.loudness, 0.1);
+        assertEquals(-20.0, result.peak, 0.1);
+    }
+
+    @Test
+    public void sine_otherSampleRate() throws Exception {
+        LoudnessAnalyzer.Result result = analyze(sineWav(44100, 0.1, 5));
+        assertEquals(-23.01, result.loudness, 0.1);
+    }
+
+    @Test
+    public void silence_isNegativeInfinity() throws Exception {
+        LoudnessAnalyzer.Result result = analyze(sineWav(44100, 0, 2));
+        assertTrue(Float.isInfinite(result.loudness));
+        assertEquals(1f, LoudnessAnalyzer.volumeFor(result.loudness, result.peak, -16f), 0f);
+    }
+
+    @Test
+    public void volumeFor_attenuatesLoudTracksOnly() {
+        assertEquals(0.5f, LoudnessAnalyzer.volumeFor(-10f, -1f, -16f), 0.01f); // 衰减 6dB
+        assertEquals(1f, LoudnessAnalyzer.volumeFor(-30f, -10f, -16f), 0f); // 不能放大
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.stage_3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LoudnessCacheTest {
+    private File dir;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("loudness").toFile();
+        cacheFile = new File(dir, "loudness.cache");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private String track(String name) throws IOException {
+        File file = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(name.getBytes("UTF-8"));
+        }
+        return file.getPath();
+    }
+
+    @Test
+    public void trim_freesOnlyRequestedBytes() throws IOException {
+        LoudnessCache cache = new LoudnessCache(cacheFile);
+        cache.put(track("a.mp3"), new LoudnessAnalyzer.Result(-10f, -1f));
+        cache.put(track("b.mp3"), new LoudnessAnalyzer.Result(-20f, -2f));
+        cache.put(track("c.mp3"), new LoudnessAnalyzer.Result(-30f, -3f));
+        cache.save();
+        cache.load();
+        assertTrue(cache.isLoaded());
+
+        long one = cache.getSizeBytes() / 3;
+        assertEquals(one, cache.trim(1)); // 至少释放一条
+        assertEquals(2, cache.size());
+        assertFalse(cache.isLoaded());
+
+        assertEquals(one, cache.trim(one));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void save_afterTrimKeepsEntriesOnlyOnDisk() throws IOException {
+        String a = track("a.mp3");
+        String b = track("b.mp3");
+        LoudnessCache cache = new LoudnessCache(cacheFile);
+        cache.put(a, new LoudnessAnalyzer.Result(-10f, -1f));
+        cache.save();
+        cache.trim(Long.MAX_VALUE);
+        assertNull(cache.get(a));
+
+        cache.put(b, new LoudnessAnalyzer.Result(-20f, -2f));
+        cache.save(); // 内存里只有 b，a 必须保留在文件里
+
+        LoudnessCache reloaded = new LoudnessCache(cacheFile);
+        reloaded.load();
+        assertTrue(reloaded.isLoaded());
+        assertEquals(-10f, reloaded.get(a).loudness, 0f);
+        assertEquals(-20f, reloaded.get(b).loudness, 0f);
+    }
+
+    @Test
+    public void loadEntries_readsBackOnlyRequestedPaths() throws IOException {
+        String a = track("a.mp3");
+        String b = track("b.mp3");
+        LoudnessCache cache = new LoudnessCache(cacheFile);
+        cache.put(a, new LoudnessAnalyzer.Result(-10f, -1f));
+        cache.put(b, new LoudnessAnalyzer.Result(-20f, -2f));
+        cache.save();
+        cache.trim(Long.MAX_VALUE);
+
+        cache.loadEntries(Arrays.asList(b));
+        assertNull(cache.get(a));
+        assertEquals(-20f, cache.get(b).loudness, 0f);
+        assertEquals(-10f, cache.getOrLoad(a).loudness, 0f);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.stage_3;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class M3uPlaylistTest {
+
+    private static final List<LocalMusicBean> LIBRARY = Arrays.asList(
+            new LocalMusicBean("1", "所念皆星河", "CMJ", "", 270000, "/storage/emulated/0/Music/a.mp3"),
+            new LocalMusicBean("2", "Song", "Singer", "", 180000, "/storage/emulated/0/Music/Live/same.mp3"),
+            new LocalMusicBean("3", "Song", "Singer", "", 300000, "/storage/emulated/0/Music/Studio/same.mp3"));
+
+    private static List<String> readLocations(String playlist) throws Exception {
+        List<String> locations = new ArrayList<>();
+        M3uPlaylist.read(new StringReader(playlist), (line, location, duration, title) -> locations.add(location + "|" + duration + "|" + title));
+        return locations;
+    }
+
+    @Test
+    public void read_parsesExtinfAndSkipsComments() throws Exception {
+        List<String> entries = readLocations("\uFEFF#EXTM3U\n#EXTINF:270,CMJ - 所念皆星河\na.mp3\n\n# 注释\nb.mp3\n");
+        assertEquals(Arrays.asList("a.mp3|270000|CMJ - 所念皆星河", "b.mp3|-1|null"), entries);
+    }
+
+    @Test
+    public void resolve_relativeAndAbsolutePaths() {
+        LibraryIndex index = new LibraryIndex(LIBRARY);
+        File base = new File("/storage/emulated/0/Playlists");
+        assertSame(LIBRARY.get(0), index.resolve("../Music/a.mp3", base, -1));
+        assertSame(LIBRARY.get(0), index.resolve("/sdcard/music/A.MP3", base, -1));
+        assertSame(LIBRARY.get(0), index.resolve("file:///storage/emulated/0/Music/a.mp3", base, -1));
+        assertNull(index.resolve("http://example.com/a.mp3", base, -1));
+    }
+
+    @Test
+    public void resolve_fallsBackToFileNameAndDuration() {
+        LibraryIndex index = new LibraryIndex(LIBRARY);
+        assertSame(LIBRARY.get(0), index.resolve("C:\\Users\\me\\Music\\a.mp3", null, -1));
+        assertSame(LIBRARY.get(2), index.resolve("D:\\same.mp3", null, 300000));
+        assertNull(index.resolve("D:\\same.mp3", null, -1)); // 同名且没有时长，无法确定
+        assertNull(index.resolve("D:\\missing.mp3", null, -1));
+    }
+
+    @Test
+    public void write_thenRead_roundTrips() throws Exception {
+        StringWriter writer = new StringWriter();
+        M3uPlaylist.write(writer, LIBRARY);
+        List<String> entries = readLocations(writer.toString());
+        assertEquals("/storage/emulated/0/Music/a.mp3|270000|CMJ - 所念皆星河", entries.get(0));
+        assertEquals(3, entries.size());
+    }
+
+    @Test
+    public void charsetFor_detectsLegacyEncodingForM3u() throws Exception {
+        String playlist = "#EXTINF:270,CMJ - 所念皆星河\n所念皆星河.mp3\n";
+        Charset gbk = Charset.forName("GBK");
+
+        InputStream legacy = new ByteArrayInputStream(playlist.getBytes(gbk));
+        assertEquals(gbk, M3uPlaylist.charsetFor("old.m3u", legacy));
+        List<String> entries = new ArrayList<>();
+        M3uPlaylist.read(new InputStreamReader(legacy, gbk), (line, location, duration, title) -> entries.add(location));
+        assertEquals(Arrays.asList("所念皆星河.mp3"), entries); // 检测后从头读取
+
+        InputStream utf8 = new ByteArrayInputStream(playlist.getBytes(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, M3uPlaylist.charsetFor("new.m3u", utf8));
+        assertEquals(StandardCharsets.UTF_8, M3uPlaylist.charsetFor("list.M3U8", new ByteArrayInputStream(playlist.getBytes(gbk))));
+    }
+
+    @Test
+    public void importFrom_streamWithoutBaseDirMatchesByFileName() throws Exception {
+        String playlist = "#EXTM3U\n#EXTINF:270,所念皆星河\nMusic/a.mp3\n/other/missing.mp3\n";
+        InputStream in = new ByteArrayInputStream(playlist.getBytes(Charset.forName("GBK")));
+        M3uPlaylist.ImportResult result = M3uPlaylist.importFrom(in, "shared.m3u", null, new LibraryIndex(LIBRARY));
+        assertEquals(Arrays.asList(LIBRARY.get(0)), result.getResolved());
+        assertEquals(1, result.getUnresolvedCount());
+    }
+
+    @Test
+    public void resolve_collapsedDuplicateMapsToKeptTrack() {
+        LibraryIndex index = new LibraryIndex(LIBRARY);
+        String duplicate = "/storage/emulated/0/Download/a (1).mp3";
+        assertNull(index.resolve(duplicate, null, -1));
+
+        index.addDuplicates(new DuplicateFinder.Result(
+                Collections.singletonMap(duplicate, "/storage/emulated/0/Music/a.mp3")));
+        assertSame(LIBRARY.get(0), index.resolve(duplicate, null, -1));
+        assertSame(LIBRARY.get(0), index.resolve("D:\\a (1).mp3", null, -1)); // 文件名同样可以匹配
+    }
+}
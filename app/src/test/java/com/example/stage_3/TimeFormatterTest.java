@@ -0,0 +1,62 @@
+package com.example.stage_3;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class TimeFormatterTest {
+
+    private static String format(long millis) {
+        char[] buffer = new char[TimeFormatter.MAX_LENGTH];
+        return new String(buffer, 0, TimeFormatter.format(millis, buffer));
+    }
+
+    @Test
+    public void format_matchesStringFormat() {
+        long[] samples = {0, 999, 1000, 59999, 60000, 270000, 3599999, 5999999, 6000000, 36000000};
+        for (long millis : samples) {
+            int minutes = (int) (millis / 1000) / 60;
+            int seconds = (int) (millis / 1000) % 60;
+            assertEquals(String.format("%02d:%02d", minutes, seconds), format(millis));
+        }
+        assertEquals("00:00", format(-1)); // MediaPlayer 未准备好时可能返回负数
+    }
+
+    @Test
+    public void format_longestValueFitsBuffer() {
+        assertTrue(format(Long.MAX_VALUE).length() <= TimeFormatter.MAX_LENGTH);
+    }
+
+    // 模拟播放界面每秒更新进度和总时长，以及列表滚动时逐行绑定时长，稳态下不应分配任何对象
+    @Test
+    public void steadyState_allocatesNothing() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        char[] progress = new char[TimeFormatter.MAX_LENGTH];
+        char[] total = new char[TimeFormatter.MAX_LENGTH];
+        char[][] rows = new char[12][TimeFormatter.MAX_LENGTH]; // 屏幕上可见的 ViewHolder
+        long[] durations = new long[1000];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = 120000 + i * 1234L;
+        }
+
+        long checksum = 0;
+        for (int round = 0; round < 2; round++) { // 第一轮预热，第二轮计数
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int second = 0; second < 3600; second++) {
+                checksum += TimeFormatter.format(second * 1000L, progress);
+                checksum += TimeFormatter.format(3600000L, total);
+            }
+            for (int position = 0; position < durations.length; position++) {
+                checksum += TimeFormatter.format(durations[position], rows[position % rows.length]);
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            if (round == 1) {
+                assertEquals(0, allocated);
+            }
+        }
+        assertTrue(checksum > 0);
+    }
+}